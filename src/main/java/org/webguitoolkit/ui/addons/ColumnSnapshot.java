@@ -0,0 +1,40 @@
+package org.webguitoolkit.ui.addons;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * A TableIndex over a collection of objects whose column values are extracted when the snapshot is created, each
+ * getter is called once per row. The rows are wrapped lazily, the extraction does not wrap them. <br>
+ * The snapshot can be attached to the master table with MasterDetailController.attachTableIndex(TableIndex), so its
+ * views are shown and saved or deleted rows are changed through them. It does not follow changes of the objects made
+ * elsewhere, call invalidate() after such a change.
+ */
+public class ColumnSnapshot extends TableIndex {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * @param collection
+	 *            the objects of the rows, the collection is copied
+	 * @param properties
+	 *            the property paths of the columns, e.g. the column names of UiPatternFactory.getColumnProperties()
+	 */
+	public ColumnSnapshot(Collection<?> collection, String... properties) {
+		super(new LazyDataList(new ArrayList<Object>(checkNotNull(collection))), properties);
+		extractValues();
+	}
+
+	/**
+	 * @return the number of rows
+	 */
+	public int size() {
+		return getRows().size();
+	}
+
+	private static Collection<?> checkNotNull(Collection<?> collection) {
+		if (collection == null)
+			throw new IllegalArgumentException("collection must be not null");
+		return collection;
+	}
+}
@@ -0,0 +1,133 @@
+package org.webguitoolkit.ui.addons;
+
+import java.io.Serializable;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.webguitoolkit.ui.base.DataBag;
+import org.webguitoolkit.ui.base.IDataBag;
+
+/**
+ * Hands out one DataBag per object as long as the bag is in use, objects are told apart by identity. A table reloaded
+ * with the same objects gets the same bags again, so no new bags are allocated and the state of the bags is kept. <br>
+ * The bags are referenced weakly, a bag no longer referenced elsewhere is dropped by the garbage collector and a new
+ * one is created the next time. A registry holds per-bag state and must not be shared between sessions, it is empty
+ * after deserialization.
+ */
+public class DataBagRegistry implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private transient Map<Object, BagReference> bags;
+	private transient ReferenceQueue<IDataBag> collectedBags;
+	// reused to look up the bags without allocating a key
+	private transient Probe probe;
+
+	/**
+	 * @return the bag of the object, a new bag if the object has none yet
+	 */
+	public synchronized IDataBag getBag(Object object) {
+		if (object == null)
+			return new DataBag(null);
+		expungeCollectedBags();
+		probe.object = object;
+		BagReference reference = bags.get(probe);
+		probe.object = null;
+		IDataBag bag = (reference != null) ? reference.get() : null;
+		if (bag == null) {
+			bag = new DataBag(object);
+			ObjectKey key = new ObjectKey(object);
+			bags.put(key, new BagReference(bag, key, collectedBags));
+		}
+		return bag;
+	}
+
+	/**
+	 * @return the number of bags in use, including bags collected but not yet removed
+	 */
+	public synchronized int size() {
+		expungeCollectedBags();
+		return bags.size();
+	}
+
+	public synchronized void clear() {
+		bags = null;
+	}
+
+	private void expungeCollectedBags() {
+		if (bags == null) {
+			bags = new HashMap<Object, BagReference>();
+			collectedBags = new ReferenceQueue<IDataBag>();
+			probe = new Probe();
+			return;
+		}
+		BagReference reference;
+		while ((reference = (BagReference) collectedBags.poll()) != null) {
+			// the object may have got a new bag meanwhile
+			if (bags.get(reference.key) == reference)
+				bags.remove(reference.key);
+		}
+	}
+
+	/**
+	 * Key of the map holding an object, equal to the keys holding the same object.
+	 */
+	private interface IdentityKey {
+		Object getObject();
+	}
+
+	private static final class ObjectKey extends WeakReference<Object> implements IdentityKey {
+		private final int hash;
+
+		ObjectKey(Object object) {
+			super(object);
+			hash = System.identityHashCode(object);
+		}
+
+		public Object getObject() {
+			return get();
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (other == this)
+				return true;
+			Object object = get();
+			return object != null && other instanceof IdentityKey && ((IdentityKey) other).getObject() == object;
+		}
+	}
+
+	private static final class Probe implements IdentityKey {
+		private Object object;
+
+		public Object getObject() {
+			return object;
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(object);
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof IdentityKey && ((IdentityKey) other).getObject() == object;
+		}
+	}
+
+	private static final class BagReference extends WeakReference<IDataBag> {
+		private final ObjectKey key;
+
+		BagReference(IDataBag bag, ObjectKey key, ReferenceQueue<IDataBag> queue) {
+			super(bag, queue);
+			this.key = key;
+		}
+	}
+}
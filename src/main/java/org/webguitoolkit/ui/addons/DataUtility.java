@@ -2,6 +2,7 @@ package org.webguitoolkit.ui.addons;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 
 import org.webguitoolkit.ui.base.DataBag;
@@ -29,4 +30,74 @@ public class DataUtility {
 		}
 		return result;
 	}
+
+	/**
+	 * Wrap the elements of the passed collection with the DataBags of the registry, elements wrapped before get the
+	 * same DataBag again as long as it is in use.
+	 * 
+	 * @param collection
+	 *            the items to wrap
+	 * @param registry
+	 *            hands out the DataBags
+	 * @return a List with DataBags containing the elements from the passed collection
+	 */
+	public static List<IDataBag> wrap(Collection collection, DataBagRegistry registry) {
+		List<IDataBag> result = new ArrayList<IDataBag>(collection.size());
+		for (Object o : collection) {
+			result.add(registry.getBag(o));
+		}
+		return result;
+	}
+
+	/**
+	 * Wrap the elements of the passed list lazily, a DataBag is created when an element is accessed the first time.
+	 * Use this for large results of which only a few rows are shown.
+	 * 
+	 * @param list
+	 *            the items to wrap, should be a random access list
+	 * @return a view of the passed list with DataBags, changes are written through to the passed list
+	 */
+	public static List<IDataBag> wrapLazy(List<?> list) {
+		return new LazyDataList(list);
+	}
+
+	/**
+	 * Wrap the elements of the passed list lazily with the DataBags of the registry.
+	 * 
+	 * @param list
+	 *            the items to wrap, should be a random access list
+	 * @param registry
+	 *            hands out the DataBags
+	 * @return a view of the passed list with DataBags, changes are written through to the passed list
+	 */
+	public static List<IDataBag> wrapLazy(List<?> list, DataBagRegistry registry) {
+		return new LazyDataList(list, registry);
+	}
+
+	/**
+	 * Take a snapshot of the column values of the passed collection for sorting and filtering large tables.
+	 * 
+	 * @param collection
+	 *            the items of the rows
+	 * @param properties
+	 *            the property paths of the columns, e.g. from UiPatternFactory.getColumnProperties()
+	 * @return the snapshot, its rows are wrapped lazily
+	 */
+	public static ColumnSnapshot snapshot(Collection<?> collection, String... properties) {
+		return new ColumnSnapshot(collection, properties);
+	}
+
+	/**
+	 * Wrap the elements of the passed iterator chunk by chunk while the list is read, e.g. rows of a database cursor.
+	 * 
+	 * @param iterator
+	 *            the items to wrap, closed at its end if it implements Closeable
+	 * @param chunkSize
+	 *            the number of items read at once, at least the number of rows the table shows
+	 * @return a List with DataBags reading the iterator on demand, close it if it is dropped before its end
+	 * @see StreamingDataList
+	 */
+	public static StreamingDataList wrap(Iterator<?> iterator, int chunkSize) {
+		return new StreamingDataList(iterator, chunkSize);
+	}
 }
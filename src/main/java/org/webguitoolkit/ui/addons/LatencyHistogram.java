@@ -0,0 +1,83 @@
+package org.webguitoolkit.ui.addons;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free latency histogram with power of two buckets in microseconds. Recording is cheap enough to stay switched
+ * on in production, percentiles are reported with the upper bound of their bucket.
+ */
+class LatencyHistogram {
+
+	private static final int BUCKETS = 40;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong totalMicros = new AtomicLong();
+	private final AtomicLong maxMicros = new AtomicLong();
+
+	/**
+	 * Record one measurement.
+	 * 
+	 * @param nanos
+	 *            the duration in nanoseconds
+	 */
+	void record(long nanos) {
+		long micros = Math.max(0, nanos / 1000);
+		int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+		buckets.incrementAndGet(bucket);
+		count.incrementAndGet();
+		totalMicros.addAndGet(micros);
+		long max = maxMicros.get();
+		while (micros > max && !maxMicros.compareAndSet(max, micros)) {
+			max = maxMicros.get();
+		}
+	}
+
+	long getCount() {
+		return count.get();
+	}
+
+	double getMeanMillis() {
+		long n = count.get();
+		return (n == 0) ? 0 : totalMicros.get() / (1000.0 * n);
+	}
+
+	double getMaxMillis() {
+		return maxMicros.get() / 1000.0;
+	}
+
+	/**
+	 * @param percentile
+	 *            the percentile between 0 and 100
+	 * @return the upper bound of the bucket containing the percentile in milliseconds
+	 */
+	double getPercentileMillis(double percentile) {
+		long n = count.get();
+		if (n == 0)
+			return 0;
+		long rank = (long) Math.ceil(n * percentile / 100.0);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += buckets.get(i);
+			if (seen >= rank)
+				return Math.min((1L << i), Math.max(1, maxMicros.get())) / 1000.0;
+		}
+		return getMaxMillis();
+	}
+
+	void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			buckets.set(i, 0);
+		}
+		count.set(0);
+		totalMicros.set(0);
+		maxMicros.set(0);
+	}
+
+	public String toString() {
+		return String.format("count=%d mean=%.3fms p50=%.3fms p95=%.3fms p99=%.3fms max=%.3fms", getCount(),
+				getMeanMillis(), getPercentileMillis(50), getPercentileMillis(95), getPercentileMillis(99),
+				getMaxMillis());
+	}
+}
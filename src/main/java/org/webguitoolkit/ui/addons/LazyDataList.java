@@ -0,0 +1,157 @@
+package org.webguitoolkit.ui.addons;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.webguitoolkit.ui.base.DataBag;
+import org.webguitoolkit.ui.base.IDataBag;
+
+/**
+ * A table data list viewing a list of objects. A DataBag is created when a row is accessed the first time and kept for
+ * later accesses, so a table showing a few rows of a large result wraps these rows only. The size is taken from the
+ * source. <br>
+ * Changes of the list are written through to the source. The source must not be changed directly while the view is
+ * used, otherwise the kept bags get out of place.
+ */
+public class LazyDataList extends AbstractList<IDataBag> implements RandomAccess, Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final List<Object> source;
+	private final DataBagRegistry registry;
+
+	// the bags created so far by their index, so the heap grows with the rows viewed only
+	private final TreeMap<Integer, IDataBag> bags = new TreeMap<Integer, IDataBag>();
+
+	/**
+	 * @param source
+	 *            the objects to wrap, should be a random access list
+	 */
+	public LazyDataList(List<?> source) {
+		this(source, null);
+	}
+
+	/**
+	 * @param source
+	 *            the objects to wrap, should be a random access list
+	 * @param registry
+	 *            hands out the bags, <code>null</code> to create new bags
+	 */
+	@SuppressWarnings("unchecked")
+	public LazyDataList(List<?> source, DataBagRegistry registry) {
+		if (source == null)
+			throw new IllegalArgumentException("source must be not null");
+		this.source = (List<Object>) source;
+		this.registry = registry;
+	}
+
+	@Override
+	public IDataBag get(int index) {
+		if (index < 0 || index >= source.size())
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + source.size());
+		IDataBag bag = bags.get(index);
+		if (bag == null) {
+			bag = (registry != null) ? registry.getBag(source.get(index)) : new DataBag(source.get(index));
+			bags.put(index, bag);
+		}
+		return bag;
+	}
+
+	@Override
+	public int size() {
+		return source.size();
+	}
+
+	/**
+	 * @return the object of the row, no bag is created for it
+	 */
+	Object getObject(int index) {
+		return source.get(index);
+	}
+
+	/**
+	 * @return the number of bags created so far
+	 */
+	int loadedCount() {
+		return bags.size();
+	}
+
+	/**
+	 * Look for the row among the bags created so far only, so no rows are wrapped.
+	 * 
+	 * @return the index of the row wrapping the same object, -1 if no bag was created for it
+	 */
+	public int indexOfLoaded(IDataBag bag) {
+		if (bag == null)
+			return -1;
+		for (Map.Entry<Integer, IDataBag> entry : bags.entrySet()) {
+			IDataBag row = entry.getValue();
+			if (row == bag || (row.getObject() != null && row.getObject() == bag.getObject()))
+				return entry.getKey();
+		}
+		return -1;
+	}
+
+	/**
+	 * Add the object of the bag to the source and keep the bag.
+	 */
+	@Override
+	public void add(int index, IDataBag element) {
+		if (index < 0 || index > source.size())
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + source.size());
+		source.add(index, element.getObject());
+		shiftBags(index, 1);
+		bags.put(index, element);
+		modCount++;
+	}
+
+	/**
+	 * Remove the object from the source.
+	 */
+	@Override
+	public IDataBag remove(int index) {
+		IDataBag removed = get(index);
+		source.remove(index);
+		bags.remove(index);
+		shiftBags(index + 1, -1);
+		modCount++;
+		return removed;
+	}
+
+	/**
+	 * Replace the object in the source and keep the bag.
+	 */
+	@Override
+	public IDataBag set(int index, IDataBag element) {
+		IDataBag replaced = get(index);
+		source.set(index, element.getObject());
+		bags.put(index, element);
+		return replaced;
+	}
+
+	@Override
+	public void clear() {
+		source.clear();
+		bags.clear();
+		modCount++;
+	}
+
+	/**
+	 * Move the bags from the index on by the distance, only the bags created so far are touched.
+	 */
+	private void shiftBags(int fromIndex, int distance) {
+		SortedMap<Integer, IDataBag> tail = bags.tailMap(fromIndex);
+		if (tail.isEmpty())
+			return;
+		Map<Integer, IDataBag> moved = new TreeMap<Integer, IDataBag>(tail);
+		tail.clear();
+		for (Map.Entry<Integer, IDataBag> entry : moved.entrySet()) {
+			bags.put(entry.getKey() + distance, entry.getValue());
+		}
+	}
+}
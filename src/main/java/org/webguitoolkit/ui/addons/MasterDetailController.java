@@ -1,11 +1,37 @@
 package org.webguitoolkit.ui.addons;
 
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.Hashtable;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang.StringUtils;
+import org.jfree.util.Log;
 import org.webguitoolkit.ui.base.IDataBag;
 import org.webguitoolkit.ui.base.WebGuiFactory;
 import org.webguitoolkit.ui.controls.AbstractPopup;
@@ -42,12 +68,24 @@ import org.webguitoolkit.ui.controls.util.Window2ActionAdapter;
  * 
  * Whenever a element in the master table is selected the details shall be updated.
  * 
+ * The controller is kept in the session in a compact form: the compounds are written once and everything kept per
+ * compound refers to them by their index. State derived from the compounds is rebuilt on first use.
+ * 
  * @author peter@17sprints.de (derived from martin's factory)
  * 
  */
-public class MasterDetailController implements Serializable {
+public class MasterDetailController implements Externalizable {
 
 	private static final long serialVersionUID = 1L;
+	// version of the form written by writeExternal()
+	private static final int EXTERNAL_VERSION = 1;
+
+	private static final int PREFETCH_THREADS = 2;
+	private static final int PREFETCH_QUEUE_SIZE = 64;
+	private static Executor sharedPrefetchExecutor;
+	private static Executor sharedResolutionExecutor;
+	private static Executor sharedNotificationExecutor;
+
 	private Table table;
 	private StandardTabStrip tabStrip;
 	private ButtonBar masterButtonBar;
@@ -56,6 +94,58 @@ public class MasterDetailController implements Serializable {
 	private DelegateTabListener delegateTabListener;
 
 	private IMasterDetailViewListener viewListener;
+	private boolean asyncViewListener = false;
+	private transient Executor notificationExecutor;
+	private transient ViewNotifier viewNotifier;
+
+	private boolean lazyTabLoading = false;
+	private long rowChangeCoalescingWindow = 0;
+
+	private IDetailResolver detailResolver;
+	private IPrefetchStrategy prefetchStrategy;
+	private transient Executor prefetchExecutor;
+	private transient Map<IDataBag, PrefetchTask> prefetchTasks;
+	private int detailCacheSize = 0;
+	private transient DetailCache detailCache;
+	private long detailCacheHits = 0;
+	private long detailCacheMisses = 0;
+
+	private Comparator<IDataBag> rowComparator;
+	private boolean insertSavedRows = false;
+
+	private final Map<ICompound, IDetailResolver> compoundResolvers = new IdentityHashMap<ICompound, IDetailResolver>();
+	private boolean parallelResolution = false;
+	private transient Executor resolutionExecutor;
+
+	private String metricsName;
+	private transient MasterDetailMetrics metrics;
+	private final Map<ICompound, String> compoundMetricsNames = new IdentityHashMap<ICompound, String>();
+
+	private final List<DetailLevel> detailLevels = new ArrayList<DetailLevel>();
+
+	private TableIndex tableIndex;
+
+	private final Map<ICompound, String[]> trackedProperties = new IdentityHashMap<ICompound, String[]>();
+	// property values of the compounds in EDIT mode when the EDIT mode was entered
+	private transient Map<ICompound, PropertySnapshot> propertySnapshots;
+
+	private final Map<ICompound, String[]> renderedProperties = new IdentityHashMap<ICompound, String[]>();
+	// property values of the compounds at their last load
+	private transient Map<ICompound, RenderedValues> renderedValues;
+
+	// the bag the compounds were loaded with and the detail version at that time
+	private transient IDataBag loadedBag;
+	private transient long loadedVersion;
+	private long detailVersion = 1;
+
+	// compounds whose button bar is intercepted, their EDIT mode is kept in compoundsInEditMode
+	private final Set<ICompound> trackedCompounds = Collections.newSetFromMap(new IdentityHashMap<ICompound, Boolean>());
+	// compounds never switched to EDIT mode, not checked at all
+	private final Set<ICompound> readOnlyCompounds = Collections.newSetFromMap(new IdentityHashMap<ICompound, Boolean>());
+	// derived from the compounds, not kept in the session but rebuilt on first use
+	private transient Set<ICompound> compoundsInEditMode;
+	// compounds whose mode has to be checked on each event
+	private transient List<ICompound> untrackedCompounds;
 
 	public MasterDetailController() {
 	}
@@ -82,6 +172,140 @@ public class MasterDetailController implements Serializable {
 		registerMasterButtonBar(masterButtonBar, true);
 	}
 
+	public void writeExternal(ObjectOutput out) throws IOException {
+		out.writeInt(EXTERNAL_VERSION);
+		out.writeObject(table);
+		out.writeObject(tabStrip);
+		out.writeObject(masterButtonBar);
+		out.writeObject(delegateTableListener);
+		out.writeObject(delegateTabListener);
+
+		List<ICompound> compounds = (delegateTableListener != null) ? delegateTableListener.compounds : Collections
+				.<ICompound> emptyList();
+		Map<ICompound, Integer> ids = new IdentityHashMap<ICompound, Integer>();
+		out.writeInt(compounds.size());
+		for (int i = 0; i < compounds.size(); i++) {
+			out.writeObject(compounds.get(i));
+			ids.put(compounds.get(i), i);
+		}
+		out.writeBoolean(delegateTabListener != null);
+		if (delegateTabListener != null)
+			delegateTabListener.writeTabs(out, ids);
+		writeIds(out, trackedCompounds, ids);
+		writeIds(out, readOnlyCompounds, ids);
+		writeCompoundMap(out, compoundResolvers, ids);
+		writeCompoundMap(out, compoundMetricsNames, ids);
+		writeCompoundMap(out, trackedProperties, ids);
+		writeCompoundMap(out, renderedProperties, ids);
+
+		out.writeObject(viewListener);
+		out.writeBoolean(asyncViewListener);
+		out.writeBoolean(lazyTabLoading);
+		out.writeLong(rowChangeCoalescingWindow);
+		out.writeObject(detailResolver);
+		out.writeObject(prefetchStrategy);
+		out.writeInt(detailCacheSize);
+		out.writeLong(detailCacheHits);
+		out.writeLong(detailCacheMisses);
+		out.writeObject(rowComparator);
+		out.writeBoolean(insertSavedRows);
+		out.writeBoolean(parallelResolution);
+		out.writeObject(metricsName);
+		out.writeInt(detailLevels.size());
+		for (DetailLevel level : detailLevels) {
+			out.writeObject(level);
+		}
+		out.writeObject(tableIndex);
+		out.writeLong(detailVersion);
+	}
+
+	@SuppressWarnings("unchecked")
+	public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+		int version = in.readInt();
+		if (version != EXTERNAL_VERSION)
+			throw new InvalidClassException(getClass().getName(), "unknown version " + version);
+		// the controls may still be read, they are only referenced here
+		table = (Table) in.readObject();
+		tabStrip = (StandardTabStrip) in.readObject();
+		masterButtonBar = (ButtonBar) in.readObject();
+		delegateTableListener = (DelegateTableListener) in.readObject();
+		delegateTabListener = (DelegateTabListener) in.readObject();
+
+		int size = in.readInt();
+		List<ICompound> compounds = new ArrayList<ICompound>(size);
+		for (int i = 0; i < size; i++) {
+			compounds.add((ICompound) in.readObject());
+		}
+		if (delegateTableListener != null)
+			delegateTableListener.compounds = compounds;
+		if (in.readBoolean())
+			delegateTabListener.readTabs(in, compounds);
+		readIds(in, trackedCompounds, compounds);
+		readIds(in, readOnlyCompounds, compounds);
+		readCompoundMap(in, compoundResolvers, compounds);
+		readCompoundMap(in, compoundMetricsNames, compounds);
+		readCompoundMap(in, trackedProperties, compounds);
+		readCompoundMap(in, renderedProperties, compounds);
+
+		viewListener = (IMasterDetailViewListener) in.readObject();
+		asyncViewListener = in.readBoolean();
+		lazyTabLoading = in.readBoolean();
+		rowChangeCoalescingWindow = in.readLong();
+		detailResolver = (IDetailResolver) in.readObject();
+		prefetchStrategy = (IPrefetchStrategy) in.readObject();
+		detailCacheSize = in.readInt();
+		detailCacheHits = in.readLong();
+		detailCacheMisses = in.readLong();
+		rowComparator = (Comparator<IDataBag>) in.readObject();
+		insertSavedRows = in.readBoolean();
+		parallelResolution = in.readBoolean();
+		metricsName = (String) in.readObject();
+		for (int i = in.readInt(); i > 0; i--) {
+			detailLevels.add((DetailLevel) in.readObject());
+		}
+		tableIndex = (TableIndex) in.readObject();
+		detailVersion = in.readLong();
+	}
+
+	private static void writeIds(ObjectOutput out, Collection<ICompound> compounds, Map<ICompound, Integer> ids)
+			throws IOException {
+		out.writeInt(compounds.size());
+		for (ICompound compound : compounds) {
+			Integer id = ids.get(compound);
+			out.writeInt((id != null) ? id : -1);
+		}
+	}
+
+	private static void readIds(ObjectInput in, Collection<ICompound> target, List<ICompound> compounds)
+			throws IOException {
+		for (int i = in.readInt(); i > 0; i--) {
+			int id = in.readInt();
+			if (id >= 0)
+				target.add(compounds.get(id));
+		}
+	}
+
+	private static void writeCompoundMap(ObjectOutput out, Map<ICompound, ?> map, Map<ICompound, Integer> ids)
+			throws IOException {
+		out.writeInt(map.size());
+		for (Map.Entry<ICompound, ?> entry : map.entrySet()) {
+			Integer id = ids.get(entry.getKey());
+			out.writeInt((id != null) ? id : -1);
+			out.writeObject(entry.getValue());
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <V> void readCompoundMap(ObjectInput in, Map<ICompound, V> map, List<ICompound> compounds)
+			throws IOException, ClassNotFoundException {
+		for (int i = in.readInt(); i > 0; i--) {
+			int id = in.readInt();
+			V value = (V) in.readObject();
+			if (id >= 0)
+				map.put(compounds.get(id), value);
+		}
+	}
+
 	public IMasterDetailViewListener getViewListener() {
 		return viewListener;
 	}
@@ -90,6 +314,1163 @@ public class MasterDetailController implements Serializable {
 		this.viewListener = viewListener;
 	}
 
+	public boolean isAsyncViewListener() {
+		return asyncViewListener;
+	}
+
+	/**
+	 * Switch the asynchronous notification of the view listener on or off. If switched on onRowChange() is called in
+	 * order on a background thread after the row change was handled and must not touch the UI. A notification not yet
+	 * delivered is dropped when the next row change arrives. A listener implementing
+	 * {@link IAsyncMasterDetailViewListener} gets onRowChangeCompleted() on the request thread of the next event
+	 * handled by this controller or when {@link #flushViewNotifications()} is called.
+	 * 
+	 * @param asyncViewListener
+	 *            <code>true</code> to notify the view listener asynchronously
+	 */
+	public void setAsyncViewListener(boolean asyncViewListener) {
+		this.asyncViewListener = asyncViewListener;
+	}
+
+	/**
+	 * Set the executor for the asynchronous notification of the view listener. If not set a pool shared by all
+	 * controllers is used, the notifications of one controller never run concurrently. A rejected notification runs on
+	 * the request thread.
+	 * 
+	 * @param notificationExecutor
+	 */
+	public void setNotificationExecutor(Executor notificationExecutor) {
+		this.notificationExecutor = notificationExecutor;
+	}
+
+	private Executor getNotificationExecutor() {
+		if (notificationExecutor == null)
+			notificationExecutor = getSharedNotificationExecutor();
+		return notificationExecutor;
+	}
+
+	private static synchronized Executor getSharedNotificationExecutor() {
+		if (sharedNotificationExecutor == null)
+			sharedNotificationExecutor = createDaemonPool("MasterDetailController-notify", 2, 256);
+		return sharedNotificationExecutor;
+	}
+
+	private ViewNotifier getViewNotifier() {
+		if (viewNotifier == null)
+			viewNotifier = new ViewNotifier();
+		return viewNotifier;
+	}
+
+	/**
+	 * Notify the view listener about a row change, asynchronously if switched on.
+	 */
+	private void notifyRowChange(IDataBag bag) {
+		if (viewListener == null)
+			return;
+		if (asyncViewListener)
+			getViewNotifier().post(bag);
+		else
+			viewListener.onRowChange(bag);
+	}
+
+	/**
+	 * Call onRowChangeCompleted() of an {@link IAsyncMasterDetailViewListener} for the notification delivered since
+	 * the last call. Must be called on the request thread, e.g. from a timer polling the page. Events handled by this
+	 * controller call it anyway.
+	 */
+	public void flushViewNotifications() {
+		if (viewNotifier == null)
+			return;
+		IDataBag bag = viewNotifier.takeCompleted();
+		if (bag != null && viewListener instanceof IAsyncMasterDetailViewListener)
+			((IAsyncMasterDetailViewListener) viewListener).onRowChangeCompleted(bag);
+	}
+
+	public boolean isLazyTabLoading() {
+		return lazyTabLoading;
+	}
+
+	/**
+	 * Switch the lazy tab loading on or off. If switched on, a row change only loads the compounds on the currently
+	 * selected tab (and the compounds that are not placed on a tab at all). The compounds on the other tabs get the new
+	 * bag but are loaded when their tab is activated the first time. The selected tab is taken from the tab changes,
+	 * call {@link #setActiveTab(ITab)} with the tab shown initially so it is known before the first tab change,
+	 * otherwise all compounds are loaded until then.
+	 * 
+	 * @param lazyTabLoading
+	 *            <code>true</code> to load the compounds of hidden tabs on demand
+	 */
+	public void setLazyTabLoading(boolean lazyTabLoading) {
+		this.lazyTabLoading = lazyTabLoading;
+	}
+
+	/**
+	 * Tell the controller which tab the tab strip shows, e.g. the tab selected when the page is built or a tab
+	 * selected by the application with selectTab(). The compounds of the tab are loaded if they missed a row change.
+	 * 
+	 * @param tab
+	 *            the selected tab of the controller's tab strip
+	 */
+	public void setActiveTab(ITab tab) {
+		if (tab == null)
+			throw new IllegalArgumentException("tab must be not null");
+		delegateTabListener.activateTab(tab);
+	}
+
+	public long getRowChangeCoalescingWindow() {
+		return rowChangeCoalescingWindow;
+	}
+
+	/**
+	 * Set the coalescing window for row navigation (row selection, goto row, page up and down). A row change arriving
+	 * within the window after the previous one is part of a burst, e.g. a held arrow key: the compounds of the selected
+	 * tab are loaded as always, but the compounds of hidden tabs only get the bag and are loaded when their tab is
+	 * shown, and the neighbouring rows are not prefetched. So the details shown always belong to the selected row,
+	 * nothing is held back. The EDIT mode check is done for every row change.
+	 * 
+	 * @param millis
+	 *            the window in milliseconds, 0 (the default) switches coalescing off
+	 */
+	public void setRowChangeCoalescingWindow(long millis) {
+		this.rowChangeCoalescingWindow = millis;
+	}
+
+	public IDetailResolver getDetailResolver() {
+		return detailResolver;
+	}
+
+	/**
+	 * Set the resolver for the expensive detail data of a master item. It is called before the compounds are loaded
+	 * and, if a prefetch strategy is set, in the background for the rows around the selection.
+	 * 
+	 * @param detailResolver
+	 *            the resolver, <code>null</code> to switch off detail resolution
+	 */
+	public void setDetailResolver(IDetailResolver detailResolver) {
+		this.detailResolver = detailResolver;
+	}
+
+	public IPrefetchStrategy getPrefetchStrategy() {
+		return prefetchStrategy;
+	}
+
+	/**
+	 * Set the strategy that selects the rows whose details are prefetched after a row change. Prefetching needs a
+	 * detail resolver.
+	 * 
+	 * @param prefetchStrategy
+	 *            the strategy, <code>null</code> to switch off prefetching
+	 */
+	public void setPrefetchStrategy(IPrefetchStrategy prefetchStrategy) {
+		this.prefetchStrategy = prefetchStrategy;
+	}
+
+	/**
+	 * Set the executor running the prefetches. The executor should be bounded, rejected prefetches are dropped. If not
+	 * set a small pool shared by all controllers is used.
+	 * 
+	 * @param prefetchExecutor
+	 */
+	public void setPrefetchExecutor(Executor prefetchExecutor) {
+		this.prefetchExecutor = prefetchExecutor;
+	}
+
+	private Executor getPrefetchExecutor() {
+		if (prefetchExecutor == null)
+			prefetchExecutor = getSharedPrefetchExecutor();
+		return prefetchExecutor;
+	}
+
+	private static synchronized Executor getSharedPrefetchExecutor() {
+		if (sharedPrefetchExecutor == null)
+			sharedPrefetchExecutor = createDaemonPool("MasterDetailController-prefetch", PREFETCH_THREADS,
+					PREFETCH_QUEUE_SIZE);
+		return sharedPrefetchExecutor;
+	}
+
+	private static synchronized Executor getSharedResolutionExecutor() {
+		if (sharedResolutionExecutor == null) {
+			int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+			sharedResolutionExecutor = createDaemonPool("MasterDetailController-resolve", threads, 16 * threads);
+		}
+		return sharedResolutionExecutor;
+	}
+
+	/**
+	 * Create a pool with a bounded queue whose threads do not keep the VM alive and time out when idle.
+	 */
+	private static Executor createDaemonPool(final String name, int threads, int queueSize) {
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(queueSize), new ThreadFactory() {
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, name);
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	/**
+	 * Add a detail level below this controller, e.g. positions below orders. A row change on this level invalidates the
+	 * detail level, its rows are loaded by the passed loader when the level becomes visible (right away if its tab is
+	 * the selected one). Compounds in EDIT mode on the detail level (and the levels below) block a row change on this
+	 * level.
+	 * 
+	 * @param detailController
+	 *            the controller of the detail level, its master table is placed on this controller's tab strip
+	 * @param tab
+	 *            the tab showing the detail level, <code>null</code> if it is always visible
+	 * @param loader
+	 *            fills the detail level's master table for a row of this level
+	 */
+	public void addDetailLevel(MasterDetailController detailController, ITab tab, IDetailLevelLoader loader) {
+		if (detailController == null || loader == null)
+			throw new IllegalArgumentException("detailController and loader must be not null");
+		if (detailController == this)
+			throw new IllegalArgumentException("a controller can not be its own detail level");
+		detailLevels.add(new DetailLevel(detailController, tab, loader));
+	}
+
+	/**
+	 * Invalidate the detail levels after a row change. The visible ones are refreshed, the others wait for their tab.
+	 */
+	private void invalidateDetailLevels(IDataBag bag) {
+		for (int i = 0; i < detailLevels.size(); i++) {
+			DetailLevel level = detailLevels.get(i);
+			level.invalidate(bag);
+			if (level.tab == null || delegateTabListener.isActive(level.tab))
+				level.refresh();
+		}
+	}
+
+	private void refreshDetailLevels(ITab tab) {
+		for (int i = 0; i < detailLevels.size(); i++) {
+			DetailLevel level = detailLevels.get(i);
+			if (level.tab == tab && level.stale)
+				level.refresh();
+		}
+	}
+
+	/**
+	 * Show the first row of the master table or clear the compounds if the table is empty.
+	 */
+	private void selectFirstRow() {
+		if (table.getDefaultModel().getTableData().size() > 0) {
+			table.selectionChange(0, true);
+		} else {
+			table.selectionChange(-1, false);
+			loadCompounds(delegateTableListener.compounds, null);
+		}
+	}
+
+	/**
+	 * Record the timings of this controller in the metrics with the passed name. Controllers of the same view in
+	 * different sessions should use the same name, the metrics are shared and registered as MBean.
+	 * 
+	 * @see MasterDetailMetrics
+	 * @param metricsName
+	 *            the name of the metrics, <code>null</code> to switch recording off
+	 */
+	public void setMetricsName(String metricsName) {
+		this.metricsName = metricsName;
+		metrics = null;
+	}
+
+	public String getMetricsName() {
+		return metricsName;
+	}
+
+	/**
+	 * Record the load times of the compound under the passed name, e.g. its label. The name should be the same in all
+	 * sessions, the load times of compounds without a name are summed up under
+	 * {@link MasterDetailMetrics#UNNAMED_COMPOUND}.
+	 * 
+	 * @param compound
+	 *            a compound registered at the controller
+	 * @param name
+	 *            the name, <code>null</code> to remove it
+	 */
+	public void setCompoundMetricsName(ICompound compound, String name) {
+		if (name == null)
+			compoundMetricsNames.remove(compound);
+		else
+			compoundMetricsNames.put(compound, name);
+	}
+
+	/**
+	 * @return the metrics of this controller, <code>null</code> if recording is switched off
+	 */
+	public MasterDetailMetrics getMetrics() {
+		if (metrics == null && metricsName != null)
+			metrics = MasterDetailMetrics.getInstance(metricsName);
+		return metrics;
+	}
+
+	/**
+	 * @return the start time for a measurement, 0 if metrics are switched off
+	 */
+	private long startTimer() {
+		return (metricsName != null) ? System.nanoTime() : 0;
+	}
+
+	/**
+	 * Register a resolver for the data of one compound. The resolver is called with the compound's bag before the
+	 * compound is loaded, and its result is applied right before the load.
+	 * 
+	 * @param compound
+	 *            a registered compound
+	 * @param resolver
+	 *            the resolver, <code>null</code> to remove it
+	 */
+	public void registerCompoundResolver(ICompound compound, IDetailResolver resolver) {
+		if (compound == null)
+			throw new IllegalArgumentException("compound must be not null");
+		if (resolver == null)
+			compoundResolvers.remove(compound);
+		else
+			compoundResolvers.put(compound, resolver);
+	}
+
+	public boolean isParallelResolution() {
+		return parallelResolution;
+	}
+
+	/**
+	 * Switch the parallel resolution of compound data on or off. If switched on the compound resolvers of a row change
+	 * run in parallel, the results are applied and the compounds loaded one after another on the request thread.
+	 * 
+	 * @param parallelResolution
+	 *            <code>true</code> to run the compound resolvers in parallel
+	 */
+	public void setParallelResolution(boolean parallelResolution) {
+		this.parallelResolution = parallelResolution;
+	}
+
+	/**
+	 * Set the executor for the parallel resolution. If not set a pool shared by all controllers is used. A rejected
+	 * resolution runs on the request thread.
+	 * 
+	 * @param resolutionExecutor
+	 */
+	public void setResolutionExecutor(Executor resolutionExecutor) {
+		this.resolutionExecutor = resolutionExecutor;
+	}
+
+	private Executor getResolutionExecutor() {
+		if (resolutionExecutor == null)
+			resolutionExecutor = getSharedResolutionExecutor();
+		return resolutionExecutor;
+	}
+
+	public int getDetailCacheSize() {
+		return detailCacheSize;
+	}
+
+	/**
+	 * Set the size of the detail cache. The cache keeps the resolved details of the last visited master items, keyed
+	 * by the object in the bag, so revisiting a row does not call the detail resolver again. Entries are invalidated on
+	 * save, delete and cancel of the master compound.
+	 * 
+	 * @param detailCacheSize
+	 *            the maximum number of cached items, 0 (the default) switches the cache off
+	 */
+	public void setDetailCacheSize(int detailCacheSize) {
+		this.detailCacheSize = detailCacheSize;
+		detailCache = null;
+	}
+
+	public long getDetailCacheHits() {
+		return detailCacheHits;
+	}
+
+	public long getDetailCacheMisses() {
+		return detailCacheMisses;
+	}
+
+	/**
+	 * Remove all entries from the detail cache and drop the running prefetches.
+	 */
+	public void clearDetailCache() {
+		detailVersion++;
+		if (detailCache != null)
+			detailCache.clear();
+		for (PrefetchTask task : getPrefetchTasks().values()) {
+			task.cancel(false);
+		}
+		getPrefetchTasks().clear();
+	}
+
+	/**
+	 * Remove the details of the passed master item from the cache and drop its prefetch.
+	 * 
+	 * @param bag
+	 *            the master item whose details are outdated
+	 */
+	public void invalidateDetails(IDataBag bag) {
+		if (bag == null)
+			return;
+		detailVersion++;
+		if (detailCache != null)
+			detailCache.remove(bag.getObject());
+		PrefetchTask task = getPrefetchTasks().remove(bag);
+		if (task != null)
+			task.cancel(false);
+	}
+
+	private DetailCache getDetailCache() {
+		if (detailCache == null && detailCacheSize > 0)
+			detailCache = new DetailCache(detailCacheSize);
+		return detailCache;
+	}
+
+	private Map<IDataBag, PrefetchTask> getPrefetchTasks() {
+		if (prefetchTasks == null)
+			prefetchTasks = new HashMap<IDataBag, PrefetchTask>();
+		return prefetchTasks;
+	}
+
+	/**
+	 * Resolve the details of the passed bag and apply them. Cached details are used first. A prefetch of the bag
+	 * already running is waited for, a prefetch not yet started is cancelled and the details are resolved on the
+	 * calling thread.
+	 * 
+	 * @param bag
+	 *            the new master item
+	 */
+	private void resolveDetails(IDataBag bag) {
+		if (detailResolver == null || bag == null)
+			return;
+		PrefetchTask task = getPrefetchTasks().remove(bag);
+		DetailCache cache = getDetailCache();
+		Object key = bag.getObject();
+		if (cache != null && key != null) {
+			if (cache.containsKey(key)) {
+				detailCacheHits++;
+				if (task != null)
+					task.cancel(false);
+				detailResolver.apply(bag, cache.get(key));
+				return;
+			}
+			detailCacheMisses++;
+		}
+		Object detail = resolveDetails(bag, task);
+		if (cache != null && key != null)
+			cache.put(key, detail);
+		detailResolver.apply(bag, detail);
+	}
+
+	private Object resolveDetails(IDataBag bag, PrefetchTask task) {
+		if (task != null && (task.isStarted() || !task.cancel(false))) {
+			try {
+				return task.get();
+			} catch (ExecutionException e) {
+				// resolve again below to report the failure on the request thread
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		return detailResolver.resolve(bag);
+	}
+
+	/**
+	 * Start the prefetches for the rows chosen by the prefetch strategy. Prefetches of rows that are not chosen anymore
+	 * are cancelled.
+	 * 
+	 * @param selectedRow
+	 *            the absolute index of the selected row
+	 */
+	private void prefetchDetails(int selectedRow) {
+		if (detailResolver == null || prefetchStrategy == null || selectedRow < 0)
+			return;
+		int rowCount = table.getDefaultModel().getTableData().size();
+		int firstRow = table.getPage().getContext().getValueAsInt(table.id4FirstRow());
+		Map<IDataBag, PrefetchTask> oldTasks = getPrefetchTasks();
+		Map<IDataBag, PrefetchTask> newTasks = new HashMap<IDataBag, PrefetchTask>();
+		List<IDataBag> bagsToPrefetch = new ArrayList<IDataBag>();
+		for (int row : prefetchStrategy.getRowsToPrefetch(selectedRow, firstRow, rowCount)) {
+			if (row < 0 || row >= rowCount || row == selectedRow)
+				continue;
+			IDataBag bag = table.getRow(row);
+			PrefetchTask task = oldTasks.remove(bag);
+			if (task != null)
+				newTasks.put(bag, task);
+			else if (detailCache == null || !detailCache.containsKey(bag.getObject()))
+				bagsToPrefetch.add(bag);
+		}
+		// take the tasks no longer needed out of the shared queue before queueing new ones
+		Executor executor = getPrefetchExecutor();
+		for (PrefetchTask task : oldTasks.values()) {
+			task.cancel(false);
+			if (executor instanceof ThreadPoolExecutor)
+				((ThreadPoolExecutor) executor).remove(task);
+		}
+		for (IDataBag bag : bagsToPrefetch) {
+			PrefetchTask task = new PrefetchTask(detailResolver, bag);
+			try {
+				executor.execute(task);
+			} catch (RejectedExecutionException e) {
+				// the executor is busy, skip this prefetch
+				continue;
+			}
+			newTasks.put(bag, task);
+		}
+		prefetchTasks = newTasks;
+	}
+
+	public Comparator<IDataBag> getRowComparator() {
+		return rowComparator;
+	}
+
+	/**
+	 * Set the sort order of the master table. A saved item whose sort key changed is moved to its sorted position, a
+	 * saved new item inserted by the controller is put at its sorted position.
+	 * 
+	 * @param rowComparator
+	 *            the comparator matching the table's sort order
+	 */
+	public void setRowComparator(Comparator<IDataBag> rowComparator) {
+		this.rowComparator = rowComparator;
+	}
+
+	public boolean isInsertSavedRows() {
+		return insertSavedRows;
+	}
+
+	/**
+	 * Let the controller insert a saved new item the master table does not contain, at its sorted position if a row
+	 * comparator is set, at the top otherwise. Off by default, the button bar listener is expected to add new items to
+	 * the table data itself and the table is reloaded if a saved item is not found.
+	 * 
+	 * @param insertSavedRows
+	 *            <code>true</code> to insert saved new items
+	 */
+	public void setInsertSavedRows(boolean insertSavedRows) {
+		this.insertSavedRows = insertSavedRows;
+	}
+
+	/**
+	 * Feed the master table from a page provider. Only the visible rows plus the margin are fetched and wrapped, the
+	 * row count, goto row and scrolling are answered from the provider.
+	 * 
+	 * @see PagedDataList
+	 * @param provider
+	 *            the source of the master rows
+	 * @param visibleRows
+	 *            the number of rows the master table shows
+	 * @param margin
+	 *            the number of rows fetched additionally before and after the visible rows
+	 */
+	public void setPageProvider(PagedDataList.IPageProvider provider, int visibleRows, int margin) {
+		table.getDefaultModel().setTableData(new PagedDataList(provider, visibleRows, margin));
+		table.load();
+	}
+
+	/**
+	 * Read the row count of a paged master table again, e.g. after the provider's source changed.
+	 */
+	public void refreshPageProvider() {
+		List<IDataBag> rows = table.getDefaultModel().getTableData();
+		if (rows instanceof PagedDataList) {
+			((PagedDataList) rows).refresh();
+			table.load();
+		}
+	}
+
+	/**
+	 * Attach a sort and filter index to the current rows of the master table. Call it again after the table got new
+	 * rows. If the table shows a sorted or filtered view of an index, the rows the view was built on are indexed, so
+	 * views are never indexed again. The table listener can answer onSort, onImplicitFilter and onDDFilter with {@link #sortRows},
+	 * {@link #filterRows} or {@link #queryRows} instead of sorting the rows itself.
+	 * 
+	 * @param properties
+	 *            the properties of the columns that can be sorted and filtered
+	 * @return the index
+	 */
+	public TableIndex attachTableIndex(String... properties) {
+		tableIndex = new TableIndex(TableIndex.getBaseRows(table.getDefaultModel().getTableData()), properties);
+		return tableIndex;
+	}
+
+	/**
+	 * Attach an index built elsewhere, e.g. a ColumnSnapshot, to the master table. Unless the table shows its rows
+	 * already, the table shows all rows of the index in their original order.
+	 * 
+	 * @param index
+	 *            the index of the rows to show
+	 * @return the index
+	 */
+	public TableIndex attachTableIndex(TableIndex index) {
+		if (index == null)
+			throw new IllegalArgumentException("index must be not null");
+		tableIndex = index;
+		if (TableIndex.getBaseRows(table.getDefaultModel().getTableData()) != index.getRows())
+			showRows(index.query(null, null, false, null, true));
+		return tableIndex;
+	}
+
+	public TableIndex getTableIndex() {
+		return tableIndex;
+	}
+
+	/**
+	 * Show all rows of the attached index sorted by the property.
+	 */
+	public void sortRows(String property, boolean ascending) {
+		showRows(getAttachedTableIndex().sort(property, ascending));
+	}
+
+	/**
+	 * Show the rows of the attached index whose property starts with (or equals) the text.
+	 */
+	public void filterRows(String property, String text, boolean exact) {
+		showRows(getAttachedTableIndex().filter(property, text, exact));
+	}
+
+	/**
+	 * Show the rows of the attached index filtered and sorted.
+	 * 
+	 * @see TableIndex#query(String, String, boolean, String, boolean)
+	 */
+	public void queryRows(String filterProperty, String text, boolean exact, String sortProperty, boolean ascending) {
+		showRows(getAttachedTableIndex().query(filterProperty, text, exact, sortProperty, ascending));
+	}
+
+	private TableIndex getAttachedTableIndex() {
+		if (tableIndex == null)
+			throw new IllegalStateException("attachTableIndex must be called before");
+		return tableIndex;
+	}
+
+	private void showRows(List<IDataBag> rows) {
+		table.getDefaultModel().setTableData(rows);
+		table.load();
+	}
+
+	/**
+	 * Register the button bar of a detail compound. Its edit, new, save and cancel events keep the index of compounds
+	 * in EDIT mode up to date, so the compound is not checked one by one on each row or tab change. The compound must
+	 * be registered at the controller.
+	 * 
+	 * @param buttonBar
+	 *            the button bar of a detail compound
+	 */
+	public void registerButtonBar(IButtonBar buttonBar) {
+		if (buttonBar == null)
+			throw new IllegalArgumentException("buttonBar must be not null");
+		ButtonBar bar = (ButtonBar) buttonBar;
+		IButtonBarListener listener = bar.getListener();
+		EditModeTrackingListener trackingListener = new EditModeTrackingListener();
+		bar.setListener(trackingListener);
+		if (listener != null)
+			trackingListener.setDelegate(listener);
+		trackCompound(bar.surroundingCompound());
+	}
+
+	/**
+	 * Mark a registered compound as never switched to EDIT or NEW mode, e.g. a compound without button bar. Its mode is
+	 * not checked on row and tab changes, so with all compounds tracked or marked the check does not allocate as long
+	 * as no compound is in EDIT mode.
+	 * 
+	 * @param compound
+	 *            a compound registered at the controller
+	 */
+	public void registerReadOnlyCompound(ICompound compound) {
+		if (compound == null)
+			throw new IllegalArgumentException("compound must be not null");
+		buildEditModeIndex();
+		if (untrackedCompounds.remove(compound))
+			readOnlyCompounds.add(compound);
+	}
+
+	private void trackCompound(ICompound compound) {
+		buildEditModeIndex();
+		if (untrackedCompounds.remove(compound) || readOnlyCompounds.remove(compound)) {
+			trackedCompounds.add(compound);
+			if (isInEditMode(compound))
+				compoundsInEditMode.add(compound);
+		}
+	}
+
+	/**
+	 * Build the EDIT mode index from the registered compounds if it is not there, i.e. after registration or after the
+	 * controller was restored from the session.
+	 */
+	private void buildEditModeIndex() {
+		if (untrackedCompounds != null)
+			return;
+		compoundsInEditMode = Collections.newSetFromMap(new IdentityHashMap<ICompound, Boolean>());
+		untrackedCompounds = new ArrayList<ICompound>();
+		if (delegateTableListener == null)
+			return;
+		for (ICompound compound : delegateTableListener.compounds) {
+			if (readOnlyCompounds.contains(compound))
+				continue;
+			if (!trackedCompounds.contains(compound))
+				untrackedCompounds.add(compound);
+			else if (isInEditMode(compound))
+				compoundsInEditMode.add(compound);
+		}
+	}
+
+	private static boolean isInEditMode(ICompound compound) {
+		return compound.getMode() == ICompound.MODE_EDIT || compound.getMode() == ICompound.MODE_NEW;
+	}
+
+	/**
+	 * Mark a compound as switched to EDIT or NEW mode.
+	 */
+	private void editModeEntered(ICompound compound) {
+		buildEditModeIndex();
+		if (trackedCompounds.contains(compound))
+			compoundsInEditMode.add(compound);
+		takePropertySnapshot(compound);
+	}
+
+	/**
+	 * Mark a compound as switched back to READONLY mode.
+	 */
+	private void editModeLeft(ICompound compound) {
+		buildEditModeIndex();
+		compoundsInEditMode.remove(compound);
+		getPropertySnapshots().remove(compound);
+		for (int i = 0; i < detailLevels.size(); i++) {
+			detailLevels.get(i).controller.editModeLeft(compound);
+		}
+	}
+
+	/**
+	 * Track the changes of the passed properties while the compound is in EDIT mode. The values are taken from the
+	 * object in the compound's bag when the EDIT or NEW mode is entered through a registered button bar. Discarding the
+	 * changes reverts the changed properties only, the application can ask for the changed properties to save only
+	 * those.
+	 * 
+	 * @param compound
+	 *            a registered compound
+	 * @param properties
+	 *            the property paths to track, none to stop tracking
+	 */
+	public void setTrackedProperties(ICompound compound, String... properties) {
+		if (compound == null)
+			throw new IllegalArgumentException("compound must be not null");
+		if (properties.length == 0)
+			trackedProperties.remove(compound);
+		else
+			trackedProperties.put(compound, properties);
+		getPropertySnapshots().remove(compound);
+	}
+
+	/**
+	 * Get the tracked properties whose value in the object of the compound's bag differs from the value when the EDIT
+	 * mode was entered. Values are compared with equals(). Call this after the bag was saved to the object, e.g. in
+	 * the save handler before the object is persisted.
+	 * 
+	 * @param compound
+	 *            a compound with tracked properties
+	 * @return the changed property paths, an empty set if the compound is not in EDIT mode or nothing changed
+	 */
+	public Set<String> getChangedProperties(ICompound compound) {
+		PropertySnapshot snapshot = getPropertySnapshots().get(compound);
+		// the values of another object say nothing about this one
+		if (snapshot == null || compound.getBag() == null || compound.getBag().getObject() != snapshot.object)
+			return Collections.emptySet();
+		String[] properties = trackedProperties.get(compound);
+		Object object = snapshot.object;
+		Set<String> result = new LinkedHashSet<String>();
+		for (int i = 0; i < properties.length; i++) {
+			Object value = PropertyAccess.read(object, properties[i]);
+			if (value == null ? snapshot.values[i] != null : !value.equals(snapshot.values[i]))
+				result.add(properties[i]);
+		}
+		return result;
+	}
+
+	/**
+	 * Declare the properties a compound displays. On a row change the compound is only loaded if one of the values
+	 * differs from the values of its last load, otherwise it just gets the new bag. Values are compared with equals().
+	 * Refreshing or invalidating the details loads all compounds again.
+	 * 
+	 * @param compound
+	 *            a registered compound
+	 * @param properties
+	 *            all property paths bound to the compound's controls, none to load the compound on every row change
+	 */
+	public void setRenderedProperties(ICompound compound, String... properties) {
+		if (compound == null)
+			throw new IllegalArgumentException("compound must be not null");
+		if (properties.length == 0)
+			renderedProperties.remove(compound);
+		else
+			renderedProperties.put(compound, properties);
+		getRenderedValues().remove(compound);
+	}
+
+	private Map<ICompound, RenderedValues> getRenderedValues() {
+		if (renderedValues == null)
+			renderedValues = new IdentityHashMap<ICompound, RenderedValues>();
+		return renderedValues;
+	}
+
+	/**
+	 * @return the values of the compound's rendered properties in its bag, <code>null</code> if they are unknown
+	 */
+	private Object[] readRenderedValues(ICompound compound) {
+		String[] properties = renderedProperties.get(compound);
+		if (properties == null || compound.getBag() == null || compound.getBag().getObject() == null)
+			return null;
+		Object object = compound.getBag().getObject();
+		Object[] values = new Object[properties.length];
+		for (int i = 0; i < properties.length; i++) {
+			values[i] = PropertyAccess.read(object, properties[i]);
+		}
+		return values;
+	}
+
+	private Map<ICompound, PropertySnapshot> getPropertySnapshots() {
+		if (propertySnapshots == null)
+			propertySnapshots = new IdentityHashMap<ICompound, PropertySnapshot>();
+		return propertySnapshots;
+	}
+
+	private void takePropertySnapshot(ICompound compound) {
+		String[] properties = trackedProperties.get(compound);
+		if (properties == null || compound.getBag() == null)
+			return;
+		Object object = compound.getBag().getObject();
+		Object[] values = new Object[properties.length];
+		for (int i = 0; i < properties.length; i++) {
+			values[i] = PropertyAccess.read(object, properties[i]);
+		}
+		getPropertySnapshots().put(compound, new PropertySnapshot(object, values));
+	}
+
+	/**
+	 * Discard the changes of a compound in EDIT mode: undo the bag and write the old values of the changed properties
+	 * back to the object. Nothing is written if the compound meanwhile shows another object than the one the values
+	 * were taken from.
+	 */
+	private void discardChanges(ICompound compound) {
+		compound.getBag().undo();
+		Set<String> changed = getChangedProperties(compound);
+		if (changed.isEmpty())
+			return;
+		String[] properties = trackedProperties.get(compound);
+		PropertySnapshot snapshot = getPropertySnapshots().get(compound);
+		for (int i = 0; i < properties.length; i++) {
+			if (changed.contains(properties[i]))
+				PropertyAccess.write(snapshot.object, properties[i], snapshot.values[i]);
+		}
+	}
+
+	/**
+	 * Show the "unsaved changes" dialog. The dialog keeps the listener, it is part of the page and not of the
+	 * controller's session state. Replays of recorded interactions override it to answer without a dialog.
+	 */
+	void showUnsavedCompoundsView(IConfirmationListener listener) {
+		if (getMetrics() != null)
+			getMetrics().recordUnsavedChangesPopup();
+		new UnsavedCompoundsView(WebGuiFactory.getInstance(), table.getPage(), listener).show();
+	}
+
+	/**
+	 * Change the master row as a click on the row or goto row does, including the EDIT mode check. Used to replay
+	 * recorded interactions without client events.
+	 * 
+	 * @return <code>false</code> if compounds are in EDIT mode and the "unsaved changes" dialog is shown
+	 */
+	boolean changeRow(int row, ClientEvent event, boolean isRowSelect) {
+		return delegateTableListener.handleRowChange(table.getRow(row), row, event, isRowSelect);
+	}
+
+	/**
+	 * Collect the compounds in EDIT or NEW mode. Tracked compounds are taken from the index, untracked ones are checked
+	 * one by one. The compounds of the detail levels below are included.
+	 * 
+	 * @param tab
+	 *            only compounds on this tab are collected, <code>null</code> for all compounds
+	 * @return the compounds in EDIT mode, an empty list if there are none
+	 */
+	private List<ICompound> getCompoundsInEditMode(ITab tab) {
+		List<ICompound> result = getOwnCompoundsInEditMode(tab);
+		for (int i = 0; i < detailLevels.size(); i++) {
+			DetailLevel level = detailLevels.get(i);
+			if (tab != null && level.tab != tab)
+				continue;
+			List<ICompound> levelResult = level.controller.getCompoundsInEditMode(null);
+			if (!levelResult.isEmpty()) {
+				if (result.isEmpty())
+					result = new ArrayList<ICompound>();
+				result.addAll(levelResult);
+			}
+		}
+		return result;
+	}
+
+	private List<ICompound> getOwnCompoundsInEditMode(ITab tab) {
+		buildEditModeIndex();
+		if (compoundsInEditMode.isEmpty() && untrackedCompounds.isEmpty())
+			return Collections.emptyList();
+		// allocated for the first compound found only
+		List<ICompound> result = null;
+		if (!compoundsInEditMode.isEmpty()) {
+			for (Iterator<ICompound> it = compoundsInEditMode.iterator(); it.hasNext();) {
+				ICompound compound = it.next();
+				// the mode might have been changed without a button bar event
+				if (!isInEditMode(compound))
+					it.remove();
+				else if (tab == null || delegateTabListener.getTab(compound) == tab)
+					result = addTo(result, compound);
+			}
+		}
+		for (int i = 0; i < untrackedCompounds.size(); i++) {
+			ICompound compound = untrackedCompounds.get(i);
+			if ((tab == null || delegateTabListener.getTab(compound) == tab) && isInEditMode(compound))
+				result = addTo(result, compound);
+		}
+		if (result == null)
+			return Collections.emptyList();
+		return result;
+	}
+
+	private static List<ICompound> addTo(List<ICompound> list, ICompound compound) {
+		if (list == null)
+			list = new ArrayList<ICompound>();
+		list.add(compound);
+		return list;
+	}
+
+	/**
+	 * Find the index of the passed bag in the master table. A row matches if it is the same bag or wraps the same
+	 * object. The selected row is checked first.
+	 * 
+	 * @return the absolute row index, -1 if the bag is not in the table
+	 */
+	private int indexOfRow(IDataBag bag) {
+		List<IDataBag> rows = table.getDefaultModel().getTableData();
+		int selected = table.getSelectedRowIndex();
+		if (selected >= 0 && selected < rows.size() && isSameRow(rows.get(selected), bag))
+			return selected;
+		// do not fetch all pages of a paged table, wrap all rows of a lazy one or read a streaming one to its end
+		if (rows instanceof PagedDataList)
+			return ((PagedDataList) rows).indexOfLoaded(bag);
+		if (rows instanceof LazyDataList)
+			return ((LazyDataList) rows).indexOfLoaded(bag);
+		if (rows instanceof StreamingDataList)
+			return ((StreamingDataList) rows).indexOfLoaded(bag);
+		for (int i = 0; i < rows.size(); i++) {
+			if (isSameRow(rows.get(i), bag))
+				return i;
+		}
+		return -1;
+	}
+
+	private static boolean isSameRow(IDataBag row, IDataBag bag) {
+		return row == bag || (row != null && row.getObject() != null && row.getObject() == bag.getObject());
+	}
+
+	/**
+	 * Put the saved bag at its position in the master table. An edited item is moved if it is out of order, a new item
+	 * is inserted if it is not found and inserting is switched on. Only the visible rows are rendered again.
+	 * 
+	 * @return the absolute row index of the bag, -1 if the bag was not found or the table data cannot be changed and
+	 *         the table has to be reloaded
+	 */
+	private int placeRow(IDataBag bag, boolean isNew) {
+		List<IDataBag> rows = table.getDefaultModel().getTableData();
+		int index = indexOfRow(bag);
+		if (index < 0 && !(isNew && insertSavedRows))
+			return -1;
+		if (index >= 0 && (rowComparator == null || isInOrder(rows, index)))
+			return index;
+		try {
+			if (index >= 0)
+				return moveRow(rows, index);
+			index = 0;
+			if (rowComparator != null) {
+				index = Collections.binarySearch(rows, bag, rowComparator);
+				if (index < 0)
+					index = -index - 1;
+			}
+			rows.add(index, bag);
+			return index;
+		} catch (UnsupportedOperationException e) {
+			// read-only table data, e.g. Arrays.asList() or an unmodifiable list
+			return -1;
+		}
+	}
+
+	/**
+	 * Move the row out of order to its sorted position. The rows in between are shifted with set(), so fixed-size lists
+	 * work too.
+	 * 
+	 * @return the new index of the row
+	 */
+	private int moveRow(List<IDataBag> rows, int from) {
+		IDataBag bag = rows.get(from);
+		int to;
+		if (from > 0 && rowComparator.compare(rows.get(from - 1), bag) > 0) {
+			to = Collections.binarySearch(rows.subList(0, from), bag, rowComparator);
+			if (to < 0)
+				to = -to - 1;
+			for (int i = from; i > to; i--) {
+				rows.set(i, rows.get(i - 1));
+			}
+		} else {
+			to = Collections.binarySearch(rows.subList(from + 1, rows.size()), bag, rowComparator);
+			if (to < 0)
+				to = -to - 1;
+			to += from;
+			for (int i = from; i < to; i++) {
+				rows.set(i, rows.get(i + 1));
+			}
+		}
+		rows.set(to, bag);
+		return to;
+	}
+
+	private boolean isInOrder(List<IDataBag> rows, int index) {
+		IDataBag bag = rows.get(index);
+		if (index > 0 && rowComparator.compare(rows.get(index - 1), bag) > 0)
+			return false;
+		if (index < rows.size() - 1 && rowComparator.compare(bag, rows.get(index + 1)) > 0)
+			return false;
+		return true;
+	}
+
+	/**
+	 * Load the details of the current master item again, even if it has not changed.
+	 */
+	public void refreshDetails() {
+		detailVersion++;
+		loadCompounds(delegateTableListener.compounds, loadedBag);
+	}
+
+	/**
+	 * @return <code>true</code> if the compounds show the passed bag and nothing was invalidated since
+	 */
+	private boolean isLoaded(IDataBag bag) {
+		return loadedVersion == detailVersion && loadedBag == bag;
+	}
+
+	/**
+	 * Set the bag on the passed compounds and load them. In lazy tab loading mode compounds on inactive tabs only get
+	 * the bag, their tab is marked stale and loaded on activation.
+	 * 
+	 * @param compounds
+	 *            the compounds to load
+	 * @param bag
+	 *            the new master item
+	 */
+	private void loadCompounds(List<ICompound> compounds, IDataBag bag) {
+		loadCompounds(compounds, bag, lazyTabLoading);
+	}
+
+	/**
+	 * @param deferHiddenTabs
+	 *            <code>true</code> to load the compounds of inactive tabs on activation, e.g. within a burst of row
+	 *            changes
+	 */
+	private void loadCompounds(List<ICompound> compounds, IDataBag bag, boolean deferHiddenTabs) {
+		resolveDetails(bag);
+		delegateTabListener.clearStaleTabs();
+		List<ICompound> compoundsToLoad = new ArrayList<ICompound>(compounds.size());
+		for (ICompound compound : compounds) {
+			compound.setBag(bag);
+			if (!delegateTabListener.deferLoad(compound, deferHiddenTabs))
+				compoundsToLoad.add(compound);
+		}
+		loadCompounds(compoundsToLoad);
+		invalidateDetailLevels(bag);
+		loadedBag = bag;
+		loadedVersion = detailVersion;
+	}
+
+	/**
+	 * Load the passed compounds with their current bag. The compound resolvers are called first, in parallel if
+	 * switched on, the loads run one after another on the calling thread.
+	 * 
+	 * @param compounds
+	 *            the compounds to load
+	 */
+	private void loadCompounds(List<ICompound> compounds) {
+		if (compoundResolvers.isEmpty()) {
+			for (ICompound compound : compounds) {
+				loadCompound(compound);
+			}
+			return;
+		}
+		List<Future<Object>> resolutions = new ArrayList<Future<Object>>(compounds.size());
+		for (ICompound compound : compounds) {
+			resolutions.add(startResolution(compound));
+		}
+		for (int i = 0; i < compounds.size(); i++) {
+			ICompound compound = compounds.get(i);
+			Future<Object> resolution = resolutions.get(i);
+			if (resolution != null)
+				compoundResolvers.get(compound).apply(compound.getBag(), getResolution(resolution));
+			loadCompound(compound);
+		}
+	}
+
+	private void loadCompound(ICompound compound) {
+		Object[] values = readRenderedValues(compound);
+		if (values != null) {
+			RenderedValues rendered = getRenderedValues().get(compound);
+			// the controls show these values already
+			if (rendered != null && rendered.isShowing(values, detailVersion)
+					&& compound.getMode() == ICompound.MODE_READONLY)
+				return;
+			getRenderedValues().put(compound, new RenderedValues(values, detailVersion));
+		} else if (renderedValues != null) {
+			renderedValues.remove(compound);
+		}
+		long start = startTimer();
+		compound.load();
+		if (start != 0)
+			getMetrics().recordCompoundLoad(compoundMetricsNames.get(compound), System.nanoTime() - start);
+	}
+
+	/**
+	 * Start the resolution of the compound's data, on the resolution executor if parallel resolution is switched on.
+	 * 
+	 * @return the pending resolution, <code>null</code> if the compound has no resolver
+	 */
+	private Future<Object> startResolution(ICompound compound) {
+		final IDetailResolver resolver = compoundResolvers.get(compound);
+		if (resolver == null)
+			return null;
+		final IDataBag bag = compound.getBag();
+		FutureTask<Object> resolution = new FutureTask<Object>(new Callable<Object>() {
+			public Object call() throws Exception {
+				return resolver.resolve(bag);
+			}
+		});
+		if (parallelResolution && bag != null) {
+			try {
+				getResolutionExecutor().execute(resolution);
+				return resolution;
+			} catch (RejectedExecutionException e) {
+				// the pool is busy, resolve on the request thread
+			}
+		}
+		resolution.run();
+		return resolution;
+	}
+
+	private static Object getResolution(Future<Object> resolution) {
+		try {
+			return resolution.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted while resolving compound data", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new IllegalStateException("resolving compound data failed", e.getCause());
+		}
+	}
+
 
 	/**
 	 * Register the table. If a table listener is present wrap it into the delegate table listener.
@@ -132,19 +1513,139 @@ public class MasterDetailController implements Serializable {
 	 *            complete list of compounds in the view
 	 */
 	private void registerCompounds(List<ICompound> compounds) {
+		if (tabStrip == null)
+			throw new IllegalStateException("TabStrip must be set before calling this");
+		// parents already walked, compounds on the same tab share most of their parent chain
+		Map<BaseControl, ITab> tabOfParent = new IdentityHashMap<BaseControl, ITab>();
 		for (ICompound compound : compounds) {
-			if (tabStrip == null)
-				throw new IllegalStateException("TabStrip must be set before calling this");
-			BaseControl parent = ((Compound) compound).getParent();
-			while (parent.getParent() != null && parent.getParent() != tabStrip) {
-				parent = parent.getParent();
-			}
-			if (parent.getParent() == tabStrip && parent instanceof ITab) {
+			ITab tab = findTab(compound, tabOfParent);
+			if (tab != null) {
 				// register compound on the tab strip
-				delegateTabListener.addCompound((ITab) parent, compound);
+				delegateTabListener.addCompound(tab, compound);
 			}
 		}
-		delegateTableListener.setCompounds(compounds); // PZ new
+		// keep an own list, compounds can be added and removed later
+		delegateTableListener.setCompounds(new ArrayList<ICompound>(compounds)); // PZ new
+		untrackedCompounds = null;
+		buildEditModeIndex();
+	}
+
+	/**
+	 * Walk up the parents of the compound to the tab strip.
+	 * 
+	 * @param tabOfParent
+	 *            the tabs of parents walked before, the parents of this walk are added
+	 * @return the tab the compound is placed on, <code>null</code> if it is not on the tab strip
+	 */
+	private ITab findTab(ICompound compound, Map<BaseControl, ITab> tabOfParent) {
+		List<BaseControl> walked = new ArrayList<BaseControl>();
+		BaseControl parent = ((Compound) compound).getParent();
+		ITab tab = null;
+		while (parent != null) {
+			if (tabOfParent.containsKey(parent)) {
+				tab = tabOfParent.get(parent);
+				break;
+			}
+			walked.add(parent);
+			if (parent.getParent() == tabStrip) {
+				if (parent instanceof ITab)
+					tab = (ITab) parent;
+				break;
+			}
+			parent = parent.getParent();
+		}
+		for (BaseControl control : walked) {
+			tabOfParent.put(control, tab);
+		}
+		return tab;
+	}
+
+	/**
+	 * Register a compound after the controller was created, e.g. on a tab added at runtime. The compound gets the
+	 * current master item.
+	 * 
+	 * @param compound
+	 *            the compound to register
+	 */
+	public void registerCompound(ICompound compound) {
+		ITab tab = findTab(compound, new IdentityHashMap<BaseControl, ITab>());
+		if (tab != null)
+			delegateTabListener.addCompound(tab, compound);
+		addCompound(compound);
+	}
+
+	/**
+	 * Register a tab added at runtime with its compounds. The compounds get the current master item.
+	 * 
+	 * @param tab
+	 *            a tab of the controller's tab strip
+	 * @param compounds
+	 *            the compounds on the tab
+	 */
+	public void registerTab(ITab tab, List<ICompound> compounds) {
+		if (tab == null)
+			throw new IllegalArgumentException("tab must be not null");
+		for (ICompound compound : compounds) {
+			delegateTabListener.addCompound(tab, compound);
+			addCompound(compound);
+		}
+	}
+
+	/**
+	 * Remove a compound from the controller.
+	 * 
+	 * @param compound
+	 *            a registered compound
+	 */
+	public void unregisterCompound(ICompound compound) {
+		delegateTabListener.removeCompound(compound);
+		removeCompound(compound);
+	}
+
+	/**
+	 * Remove a tab and its compounds from the controller, e.g. before the tab is removed from the tab strip. Detail
+	 * levels on the tab are removed too.
+	 * 
+	 * @param tab
+	 *            a registered tab
+	 */
+	public void unregisterTab(ITab tab) {
+		for (ICompound compound : delegateTabListener.removeTab(tab)) {
+			removeCompound(compound);
+		}
+		for (Iterator<DetailLevel> it = detailLevels.iterator(); it.hasNext();) {
+			if (it.next().tab == tab)
+				it.remove();
+		}
+	}
+
+	private void addCompound(ICompound compound) {
+		if (delegateTableListener.compounds.contains(compound))
+			return;
+		buildEditModeIndex();
+		delegateTableListener.compounds.add(compound);
+		if (!trackedCompounds.contains(compound) && !readOnlyCompounds.contains(compound))
+			untrackedCompounds.add(compound);
+		if (loadedBag != null) {
+			compound.setBag(loadedBag);
+			if (!delegateTabListener.deferLoad(compound, lazyTabLoading))
+				loadCompound(compound);
+		}
+	}
+
+	private void removeCompound(ICompound compound) {
+		delegateTableListener.compounds.remove(compound);
+		buildEditModeIndex();
+		untrackedCompounds.remove(compound);
+		trackedCompounds.remove(compound);
+		readOnlyCompounds.remove(compound);
+		compoundMetricsNames.remove(compound);
+		compoundsInEditMode.remove(compound);
+		compoundResolvers.remove(compound);
+		trackedProperties.remove(compound);
+		getPropertySnapshots().remove(compound);
+		renderedProperties.remove(compound);
+		getRenderedValues().remove(compound);
 	}
 
 	private void registerMasterButtonBar(IButtonBar buttonBar, boolean callTableListenerOnNew) {
@@ -161,6 +1662,7 @@ public class MasterDetailController implements Serializable {
 		masterButtonBar.setListener(delegateListener);
 		if (listener != null)
 			delegateListener.setDelegate(listener);
+		trackCompound(masterButtonBar.surroundingCompound());
 	}
 
 	/**
@@ -171,7 +1673,11 @@ public class MasterDetailController implements Serializable {
 
 		private static final long serialVersionUID = 1L;
 		private ITableListener delegate = null;
-		private List<ICompound> compounds = new ArrayList<ICompound>();
+		// written by the controller
+		private transient List<ICompound> compounds = new ArrayList<ICompound>();
+		private transient boolean navigating = false;
+		// the time of the last row change, for the coalescing window
+		private transient long lastRowChangeMillis;
 
 		public void setDelegate(ITableListener listener) {
 			delegate = listener;
@@ -203,7 +1709,7 @@ public class MasterDetailController implements Serializable {
 				userRow = Math.max(0,
 						Math.min(userRow, table.getPage().getContext().getValueAsInt(table.id4size()) - 1));
 				IDataBag bag = table.getRow(userRow);
-				success = handleRowChange(bag, event, false);
+				success = handleRowChange(bag, userRow, event, false);
 			}
 			if (success)
 				getDelegate().onGotoRow(event);
@@ -220,16 +1726,19 @@ public class MasterDetailController implements Serializable {
 			int firstRow = table.getPage().getContext().getValueAsInt(table.id4FirstRow());
 			int absSelection = firstRow + rowSelected;
 			IDataBag bag = table.getRow(absSelection);
-			boolean success = handleRowChange(bag, event, true);
+			boolean success = handleRowChange(bag, absSelection, event, true);
 			if (success)
 				getDelegate().onRowSelected(event);
 		}
 
 		@Override
 		public void onRowSelection(ITable table, int row) {
-			for (ICompound compound : compounds) {
-				compound.setBag(table.getRow(row));
-				compound.load();
+			IDataBag bag = table.getRow(row);
+			if (!isLoaded(bag)) {
+				boolean burst = navigating && isInBurst();
+				loadCompounds(compounds, bag, lazyTabLoading || burst);
+				if (!burst)
+					prefetchDetails(row);
 			}
 			if (getDelegate() instanceof AbstractTableListener)
 				((AbstractTableListener) getDelegate()).onRowSelection(table, row);
@@ -243,35 +1752,54 @@ public class MasterDetailController implements Serializable {
 		 * 
 		 * @return <code>false</code> if some compound are in edit mode
 		 */
-		private boolean handleRowChange(IDataBag newItem, ClientEvent evnet, boolean isRowSelect) {
-			List<ICompound> compoundsInEditMode = new ArrayList<ICompound>();
+		private boolean handleRowChange(IDataBag newItem, int row, ClientEvent evnet, boolean isRowSelect) {
+			flushViewNotifications();
+			long start = startTimer();
+			try {
+				return doHandleRowChange(newItem, row, evnet, isRowSelect);
+			} finally {
+				if (start != 0)
+					getMetrics().recordRowChange(System.nanoTime() - start);
+			}
+		}
+
+		private boolean doHandleRowChange(IDataBag newItem, int row, ClientEvent evnet, boolean isRowSelect) {
+			// the same row again, nothing to load
+			if (isLoaded(newItem))
+				return true;
 
 			// look for compounds in EDIT mode
-			for (ICompound compound : compounds) {
-				if (compound.getMode() == ICompound.MODE_EDIT || compound.getMode() == ICompound.MODE_NEW) {
-					compoundsInEditMode.add(compound);
-				}
-			}
+			List<ICompound> compoundsInEditMode = getCompoundsInEditMode(null);
 
 			// if compounds in EDIT mode exist raise dialog
 			if (!compoundsInEditMode.isEmpty()) {
-				new UnsavedCompoundsView(WebGuiFactory.getInstance(), table.getPage(), new RowChangeConfirmListener(delegate,
-						evnet, compounds, compoundsInEditMode, isRowSelect, newItem,
-						((Table) table).getSelectedRowIndex())).show();
+				showUnsavedCompoundsView(new RowChangeConfirmListener(delegate, evnet, compounds, compoundsInEditMode,
+						isRowSelect, newItem, ((Table) table).getSelectedRowIndex()));
 				return false;
 			}
 
-			for (ICompound compound : compounds) {
-				compound.setBag(newItem);
-				compound.load();
-			}
+			boolean burst = isInBurst();
+			loadCompounds(compounds, newItem, lazyTabLoading || burst);
+			if (!burst)
+				prefetchDetails(row);
 			
-			if (viewListener != null)
-				viewListener.onRowChange(newItem);
+			notifyRowChange(newItem);
 			
 			return true;
 		}
 
+		/**
+		 * @return <code>true</code> if this row change follows the previous one within the coalescing window
+		 */
+		private boolean isInBurst() {
+			if (rowChangeCoalescingWindow <= 0)
+				return false;
+			long now = System.currentTimeMillis();
+			boolean burst = now - lastRowChangeMillis < rowChangeCoalescingWindow;
+			lastRowChangeMillis = now;
+			return burst;
+		}
+
 		@Override
 		public void onCheckAll(ClientEvent event) {
 			getDelegate().onCheckAll(event);
@@ -334,12 +1862,22 @@ public class MasterDetailController implements Serializable {
 
 		@Override
 		public void onPageDown(ClientEvent event) {
-			getDelegate().onPageDown(event);
+			navigating = true;
+			try {
+				getDelegate().onPageDown(event);
+			} finally {
+				navigating = false;
+			}
 		}
 
 		@Override
 		public void onPageUp(ClientEvent event) {
-			getDelegate().onPageUp(event);
+			navigating = true;
+			try {
+				getDelegate().onPageUp(event);
+			} finally {
+				navigating = false;
+			}
 		}
 
 		public class RowChangeConfirmListener implements IConfirmationListener {
@@ -365,14 +1903,13 @@ public class MasterDetailController implements Serializable {
 
 			public void onYes(ClientEvent event) {
 				for (ICompound compound : compoundsInEdit) {
-					compound.getBag().undo();
+					discardChanges(compound);
 					compound.changeElementMode(ICompound.MODE_READONLY);
+					editModeLeft(compound);
 				}
+				detailVersion++;
 				
-				for (ICompound compound : allCompounds) {
-					compound.setBag(newItem);
-					compound.load();
-				}
+				loadCompounds(allCompounds, newItem);
 				if (delegate != null) {
 					if (isRowSelelct)
 						delegatedListener.onRowSelected(tableEvent);
@@ -403,39 +1940,182 @@ public class MasterDetailController implements Serializable {
 	
 		private static final long serialVersionUID = 1L;
 		private ITabListener delegate = null;
-		private final Hashtable<ITab,List<ICompound>> compoundsOnTab = new Hashtable<ITab, List<ICompound>>();
+		// written by the controller
+		private transient Map<ITab, List<ICompound>> compoundsOnTab = new IdentityHashMap<ITab, List<ICompound>>();
+		private transient Set<ITab> staleTabs = Collections.newSetFromMap(new IdentityHashMap<ITab, Boolean>());
+		private transient ITab activeTab = null;
+		// derived from compoundsOnTab
+		private transient Map<ICompound, ITab> tabOfCompound;
 
 		public void setDelegate(ITabListener listener) {
 			delegate = listener;
 		}
 
+		/**
+		 * Put the compound on the tab, a compound on another tab is moved.
+		 */
 		public void addCompound(ITab tab, ICompound compound) {
+			ITab oldTab = getTab(compound);
+			if (oldTab == tab)
+				return;
+			if (oldTab != null)
+				removeCompound(compound);
 			List<ICompound> comps = compoundsOnTab.get(tab);
 			if (comps == null) {
 				comps = new ArrayList<ICompound>();
 				compoundsOnTab.put(tab, comps);
 			}
 			comps.add(compound);
+			if (tabOfCompound != null)
+				tabOfCompound.put(compound, tab);
 		}
 
-		public boolean onTabChange(ITab old, ITab selected, ClientEvent event) {
-			List<ICompound> compounds = compoundsOnTab.get(old);
-			List<ICompound> compoundsInEditMode = new ArrayList<ICompound>();
-			if (compounds != null) {
-				for (ICompound compound :compounds) {
-					if (compound.getMode() == ICompound.MODE_EDIT || compound.getMode() == ICompound.MODE_NEW) {
-						compoundsInEditMode.add(compound);
+		void removeCompound(ICompound compound) {
+			ITab tab = getTab(compound);
+			if (tab == null)
+				return;
+			tabOfCompound.remove(compound);
+			List<ICompound> comps = compoundsOnTab.get(tab);
+			comps.remove(compound);
+			// the tab stays the active one, it only has no compounds left
+			if (comps.isEmpty()) {
+				compoundsOnTab.remove(tab);
+				staleTabs.remove(tab);
+			}
+		}
+
+		/**
+		 * @return the compounds that were on the tab
+		 */
+		List<ICompound> removeTab(ITab tab) {
+			staleTabs.remove(tab);
+			if (activeTab == tab)
+				activeTab = null;
+			List<ICompound> comps = compoundsOnTab.remove(tab);
+			if (comps == null)
+				return Collections.emptyList();
+			if (tabOfCompound != null) {
+				for (ICompound compound : comps) {
+					tabOfCompound.remove(compound);
+				}
+			}
+			return comps;
+		}
+
+		/**
+		 * @return the tab the compound is placed on, <code>null</code> if it is not on a tab
+		 */
+		ITab getTab(ICompound compound) {
+			if (tabOfCompound == null) {
+				tabOfCompound = new IdentityHashMap<ICompound, ITab>();
+				for (Map.Entry<ITab, List<ICompound>> entry : compoundsOnTab.entrySet()) {
+					for (ICompound comp : entry.getValue()) {
+						tabOfCompound.put(comp, entry.getKey());
 					}
 				}
 			}
+			return tabOfCompound.get(compound);
+		}
+
+		/**
+		 * Check if the load of the compound can be deferred because it is on an inactive tab. If so the tab is marked
+		 * stale.
+		 * 
+		 * @return <code>true</code> if the compound must not be loaded now
+		 */
+		boolean deferLoad(ICompound compound, boolean deferHiddenTabs) {
+			if (!deferHiddenTabs || activeTab == null)
+				return false;
+			ITab tab = getTab(compound);
+			if (tab == null || tab == activeTab)
+				return false;
+			staleTabs.add(tab);
+			return true;
+		}
+
+		void clearStaleTabs() {
+			staleTabs.clear();
+		}
+
+		/**
+		 * Write the tabs with the ids of their compounds.
+		 */
+		void writeTabs(ObjectOutput out, Map<ICompound, Integer> ids) throws IOException {
+			out.writeInt(compoundsOnTab.size());
+			for (Map.Entry<ITab, List<ICompound>> entry : compoundsOnTab.entrySet()) {
+				out.writeObject(entry.getKey());
+				writeIds(out, entry.getValue(), ids);
+			}
+			out.writeObject(activeTab);
+			out.writeInt(staleTabs.size());
+			for (ITab tab : staleTabs) {
+				out.writeObject(tab);
+			}
+		}
+
+		void readTabs(ObjectInput in, List<ICompound> compounds) throws IOException, ClassNotFoundException {
+			compoundsOnTab = new IdentityHashMap<ITab, List<ICompound>>();
+			for (int i = in.readInt(); i > 0; i--) {
+				ITab tab = (ITab) in.readObject();
+				List<ICompound> comps = new ArrayList<ICompound>();
+				readIds(in, comps, compounds);
+				compoundsOnTab.put(tab, comps);
+			}
+			activeTab = (ITab) in.readObject();
+			staleTabs = Collections.newSetFromMap(new IdentityHashMap<ITab, Boolean>());
+			for (int i = in.readInt(); i > 0; i--) {
+				staleTabs.add((ITab) in.readObject());
+			}
+			tabOfCompound = null;
+		}
+
+		/**
+		 * Remember the selected tab and load its compounds if they missed a row change.
+		 */
+		void activateTab(ITab tab) {
+			activeTab = tab;
+			if (tab == null)
+				return;
+			if (staleTabs.remove(tab)) {
+				List<ICompound> compounds = compoundsOnTab.get(tab);
+				if (compounds != null)
+					loadCompounds(compounds);
+			}
+			refreshDetailLevels(tab);
+		}
+
+		/**
+		 * @return <code>true</code> if the tab is the selected one or the selected tab is unknown
+		 */
+		boolean isActive(ITab tab) {
+			return activeTab == null || activeTab == tab;
+		}
+
+		public boolean onTabChange(ITab old, ITab selected, ClientEvent event) {
+			flushViewNotifications();
+			long start = startTimer();
+			try {
+				return handleTabChange(old, selected, event);
+			} finally {
+				if (start != 0)
+					getMetrics().recordTabChange(System.nanoTime() - start);
+			}
+		}
+
+		private boolean handleTabChange(ITab old, ITab selected, ClientEvent event) {
+			List<ICompound> compoundsInEditMode = (old != null) ? getCompoundsInEditMode(old) : Collections
+					.<ICompound> emptyList();
 			if (!compoundsInEditMode.isEmpty()) {
-				new UnsavedCompoundsView(WebGuiFactory.getInstance(), table.getPage(), new TabChangeConfirmListener(delegate,
-						event, compoundsInEditMode, old, selected)).show();
+				showUnsavedCompoundsView(new TabChangeConfirmListener(delegate, event, compoundsInEditMode, old,
+						selected));
 				return false;
 			}
+			boolean changed = true;
 			if (delegate != null)
-				return delegate.onTabChange(old, selected, event);
-			return true;
+				changed = delegate.onTabChange(old, selected, event);
+			if (changed)
+				activateTab(selected);
+			return changed;
 		}
 
 		public class TabChangeConfirmListener implements IConfirmationListener {
@@ -456,22 +2136,27 @@ public class MasterDetailController implements Serializable {
 			}
 
 			public void onYes(ClientEvent event) {
-				if (masterButtonBar != null && compounds.contains(masterButtonBar.surroundingCompound())
-						&& masterButtonBar.surroundingCompound().getMode() == ICompound.MODE_NEW) {
+				boolean leaveNew = masterButtonBar != null && compounds.contains(masterButtonBar.surroundingCompound())
+						&& masterButtonBar.surroundingCompound().getMode() == ICompound.MODE_NEW;
+				// discard while the compounds still hold the bags the changes were made in
+				detailVersion++;
+				for (ICompound comp : compounds) {
+					discardChanges(comp);
+					comp.load();
+					comp.changeElementMode(ICompound.MODE_READONLY);
+					editModeLeft(comp);
+				}
+				if (leaveNew) {
 					DelegateButtonBarListener listener = (DelegateButtonBarListener) ((ButtonBar) masterButtonBar)
 							.getListener();
 					int oldTableSelection = listener.getOldTableSelection();
 					((Table) table).selectionChange(oldTableSelection, true);
 				}
-				for (ICompound comp : compounds) {
-					comp.getBag().undo();
-					comp.load();
-					comp.changeElementMode(ICompound.MODE_READONLY);
-				}
 				if (delegateTabListener != null)
 					delegateTabListener.onTabChange(oldTab, newTab, tabEvent);
 				else
 					oldTab.getTabStrip().selectTab(newTab);
+				activateTab(newTab);
 			}
 
 			public void onNo(ClientEvent event) {
@@ -482,7 +2167,8 @@ public class MasterDetailController implements Serializable {
 	}
 
 	/**
-	 * DelegateTableListener handles interaction with button bar events and calls the
+	 * DelegateTableListener handles interaction with button bar events and calls the delegate. The actions are handled
+	 * by package private methods taking the compound, so recorded interactions can be replayed without client events.
 	 */
 	public class DelegateButtonBarListener implements IButtonBarListener {
 		private static final long serialVersionUID = 1L;
@@ -505,73 +2191,239 @@ public class MasterDetailController implements Serializable {
 		}
 
 		public void onCancel(ClientEvent event) {
-			if (getCompound(event).getMode() == ICompound.MODE_NEW && oldTableSelection != -1)
-				((Table) masterTable).selectionChange(oldTableSelection, true);
+			onCancel(event, getCompound(event));
+		}
+
+		void onCancel(ClientEvent event, ICompound compound) {
+			long start = startTimer();
+			try {
+				invalidateDetails(compound.getBag());
+				editModeLeft(compound);
+				if (compound.getMode() == ICompound.MODE_NEW && oldTableSelection != -1)
+					((Table) masterTable).selectionChange(oldTableSelection, true);
+				if (delegate != null)
+					delegate.onCancel(event);
+			} finally {
+				recordAction(MasterDetailMetrics.ACTION_CANCEL, start);
+			}
+		}
+
+		public void onDelete(ClientEvent event) {
+			onDelete(event, getCompound(event));
+		}
+
+		void onDelete(ClientEvent event, ICompound compound) {
+			long start = startTimer();
+			try {
+				if (delegate != null)
+					delegate.onDelete(event);
+				if (compound.hasErrors())
+					return;
+				IDataBag bag = compound.getBag();
+				invalidateDetails(bag);
+				editModeLeft(compound);
+				int index = removeRow(bag);
+				if (tableIndex != null)
+					tableIndex.invalidate();
+				if (index >= 0) {
+					// only the deleted row was removed, load() renders the visible rows again
+					masterTable.load();
+				} else {
+					((Table) masterTable).removeAndReload(bag);
+					index = 0;
+				}
+				int size = masterTable.getDefaultModel().getTableData().size();
+				if (size > 0) {
+					// select the row that moved into the place of the deleted one
+					masterTable.selectionChange(Math.min(index, size - 1), true);
+				} else {
+					masterTable.selectionChange(-1, false);
+					compound.setBag(null);
+					compound.load();
+				}
+			} finally {
+				recordAction(MasterDetailMetrics.ACTION_DELETE, start);
+			}
+		}
+
+		public void onEdit(ClientEvent event) {
+			onEdit(event, getCompound(event));
+		}
+
+		void onEdit(ClientEvent event, ICompound compound) {
+			long start = startTimer();
+			try {
+				if (delegate != null)
+					delegate.onEdit(event);
+				editModeEntered(compound);
+			} finally {
+				recordAction(MasterDetailMetrics.ACTION_EDIT, start);
+			}
+		}
+
+		public void onNew(ClientEvent event) {
+			onNew(event, getCompound(event));
+		}
+
+		void onNew(ClientEvent event, ICompound compound) {
+			long start = startTimer();
+			try {
+				if (delegate != null)
+					delegate.onNew(event);
+				editModeEntered(compound);
+				// the master compound got a new bag
+				detailVersion++;
+				oldTableSelection = ((Table) masterTable).getSelectedRowIndex();
+				masterTable.selectionChange(-1, false);
+			} finally {
+				recordAction(MasterDetailMetrics.ACTION_NEW, start);
+			}
+		}
+
+		public void onSave(ClientEvent event) {
+			onSave(event, getCompound(event));
+		}
+
+		void onSave(ClientEvent event, ICompound compound) {
+			long start = startTimer();
+			try {
+				boolean isNew = compound.getMode() == ICompound.MODE_NEW;
+				if (delegate != null)
+					delegate.onSave(event);
+				invalidateDetails(compound.getBag());
+				if (tableIndex != null)
+					tableIndex.invalidate();
+				if (!compound.hasErrors())
+					editModeLeft(compound);
+				if (compound.hasErrors())
+					return;
+				if (isNew && !callTableListenerOnNew)
+					return;
+				// update the saved row only instead of reloading the whole table
+				int index = placeRow(compound.getBag(), isNew);
+				if (index < 0) {
+					if (isNew)
+						((Table) masterTable).selectionChange(0, true);
+					else
+						masterTable.load();
+					return;
+				}
+				masterTable.load();
+				if (isNew)
+					masterTable.selectionChange(index, true);
+				else if (index != ((Table) masterTable).getSelectedRowIndex())
+					masterTable.selectionChange(index, false);
+			} finally {
+				recordAction(MasterDetailMetrics.ACTION_SAVE, start);
+			}
+		}
+
+		/**
+		 * @return the index of the removed row, -1 if the bag was not found or the table data cannot be changed
+		 */
+		private int removeRow(IDataBag bag) {
+			int index = indexOfRow(bag);
+			if (index < 0)
+				return -1;
+			try {
+				masterTable.getDefaultModel().getTableData().remove(index);
+				return index;
+			} catch (UnsupportedOperationException e) {
+				return -1;
+			}
+		}
+
+		private void recordAction(String action, long start) {
+			if (start != 0)
+				getMetrics().recordButtonBarAction(action, System.nanoTime() - start);
+		}
+
+		private ICompound getCompound(ClientEvent event) {
+			return ((ICompoundLifecycleElement) event.getSource()).surroundingCompound();
+		}
+
+		public int getOldTableSelection() {
+			return oldTableSelection;
+		}
+
+	}
+
+	/**
+	 * EditModeTrackingListener keeps the index of compounds in EDIT mode up to date for detail button bars and calls
+	 * the delegate. A detail saved or deleted changes the details of the master item, so they are invalidated.
+	 */
+	public class EditModeTrackingListener implements IButtonBarListener {
+		private static final long serialVersionUID = 1L;
+
+		private IButtonBarListener delegate;
+
+		public void setDelegate(IButtonBarListener listener) {
+			this.delegate = listener;
+		}
+
+		public void onCancel(ClientEvent event) {
 			if (delegate != null)
 				delegate.onCancel(event);
+			editModeLeft(getCompound(event));
 		}
 
 		public void onDelete(ClientEvent event) {
 			if (delegate != null)
 				delegate.onDelete(event);
-			if (getCompound(event).hasErrors())
-				return;
-			((Table) masterTable).removeAndReload(getCompound(event).getBag());
-			if (masterTable.getDefaultModel().getTableData().size() > 0) {
-				masterTable.selectionChange(0, true);
-			} else {
-				masterTable.selectionChange(-1, false);
-				getCompound(event).setBag(null);
-				getCompound(event).load();
+			if (!getCompound(event).hasErrors()) {
+				invalidateDetails(loadedBag);
+				editModeLeft(getCompound(event));
 			}
 		}
 
 		public void onEdit(ClientEvent event) {
 			if (delegate != null)
 				delegate.onEdit(event);
+			editModeEntered(getCompound(event));
 		}
 
 		public void onNew(ClientEvent event) {
 			if (delegate != null)
 				delegate.onNew(event);
-			oldTableSelection = ((Table) masterTable).getSelectedRowIndex();
-			masterTable.selectionChange(-1, false);
+			editModeEntered(getCompound(event));
 		}
 
 		public void onSave(ClientEvent event) {
-			boolean isNew = getCompound(event).getMode() == ICompound.MODE_NEW;
 			if (delegate != null)
 				delegate.onSave(event);
-			if (isNew && !getCompound(event).hasErrors()) {
-				if (callTableListenerOnNew)
-					((Table) masterTable).selectionChange(0, true);
-
-			} else if (!getCompound(event).hasErrors())
-				masterTable.load();
+			if (!getCompound(event).hasErrors()) {
+				invalidateDetails(loadedBag);
+				editModeLeft(getCompound(event));
+			}
 		}
 
 		private ICompound getCompound(ClientEvent event) {
 			return ((ICompoundLifecycleElement) event.getSource()).surroundingCompound();
 		}
-
-		public int getOldTableSelection() {
-			return oldTableSelection;
-		}
-
 	}
 
 	/**
-	 * Confirmation dialog that is displayed when there are compounds in edit mode
+	 * Confirmation dialog that is displayed when there are compounds in edit mode. The answer is passed to the
+	 * listener once, a dialog answered twice is just closed the second time.
 	 */
 	class UnsavedCompoundsView extends AbstractPopup {
 		private static final long serialVersionUID = 1L;
-		private final IConfirmationListener proceedListener;
+		private IConfirmationListener proceedListener;
 
 		public UnsavedCompoundsView(WebGuiFactory factory, Page page, IConfirmationListener proceedListener) {
 			super(factory, page, "popup.header.unsaved.compounds@There are unsaved Forms!", 250, 400);
 			this.proceedListener = proceedListener;
 		}
 
+		/**
+		 * @return the listener, <code>null</code> if the dialog has been answered already
+		 */
+		private IConfirmationListener takeListener() {
+			IConfirmationListener listener = proceedListener;
+			proceedListener = null;
+			return listener;
+		}
+
 		@Override
 		protected void createControls(WebGuiFactory factory, ICanvas viewConnector) {
 			String msgType = "warn";
@@ -588,16 +2440,20 @@ public class MasterDetailController implements Serializable {
 
 			IActionListener noListener = new IActionListener() {
 				public void onAction(ClientEvent event) {
-					proceedListener.onNo(event);
+					IConfirmationListener listener = takeListener();
 					close();
+					if (listener != null)
+						listener.onNo(event);
 				}
 				private static final long serialVersionUID = 1L;
 			};
 
 			IActionListener yesListener = new IActionListener() {
 				public void onAction(ClientEvent event) {
-					proceedListener.onYes(event);
+					IConfirmationListener listener = takeListener();
 					close();
+					if (listener != null)
+						listener.onYes(event);
 				}
 				private static final long serialVersionUID = 1L;
 			};
@@ -639,7 +2495,7 @@ public class MasterDetailController implements Serializable {
 	/**
 	 * listener that handles the confirmation result.
 	 */
-	interface IConfirmationListener {
+	interface IConfirmationListener extends Serializable {
 		void onYes(ClientEvent event);
 
 		void onNo(ClientEvent event);
@@ -649,4 +2505,240 @@ public class MasterDetailController implements Serializable {
 		public void onRowChange(IDataBag bag);
 	}
 
+	/**
+	 * A view listener notified asynchronously. onRowChange() runs on a background thread, onRowChangeCompleted() on a
+	 * later request thread and may update the UI. Only the last delivered notification is completed.
+	 */
+	public interface IAsyncMasterDetailViewListener extends IMasterDetailViewListener {
+		public void onRowChangeCompleted(IDataBag bag);
+	}
+
+	/**
+	 * Resolves the expensive detail data of a master item, e.g. lazy associations. resolve() may be called on a
+	 * background thread and must not touch the UI, apply() is always called on the request thread before the compounds
+	 * are loaded.
+	 */
+	public interface IDetailResolver extends Serializable {
+		public Object resolve(IDataBag bag);
+
+		public void apply(IDataBag bag, Object detail);
+	}
+
+	/**
+	 * Selects the rows whose details are prefetched after a row change.
+	 */
+	public interface IPrefetchStrategy extends Serializable {
+		/**
+		 * @param selectedRow
+		 *            the absolute index of the selected row
+		 * @param firstRow
+		 *            the absolute index of the first visible row
+		 * @param rowCount
+		 *            the number of rows in the table
+		 * @return the absolute indexes of the rows to prefetch
+		 */
+		public int[] getRowsToPrefetch(int selectedRow, int firstRow, int rowCount);
+	}
+
+	/**
+	 * Prefetches the rows before and after the selected row.
+	 */
+	public static class NeighborRowsPrefetchStrategy implements IPrefetchStrategy {
+		private static final long serialVersionUID = 1L;
+		private final int degree;
+
+		/**
+		 * @param degree
+		 *            the number of rows to prefetch on each side of the selection
+		 */
+		public NeighborRowsPrefetchStrategy(int degree) {
+			this.degree = degree;
+		}
+
+		public int[] getRowsToPrefetch(int selectedRow, int firstRow, int rowCount) {
+			int[] result = new int[2 * degree];
+			for (int i = 0; i < degree; i++) {
+				// the next row first, users move down more often
+				result[2 * i] = selectedRow + i + 1;
+				result[2 * i + 1] = selectedRow - i - 1;
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Fills the master table of a detail level for the selected row of the level above.
+	 */
+	public interface IDetailLevelLoader extends Serializable {
+		/**
+		 * @param parentBag
+		 *            the selected row of the level above, <code>null</code> if nothing is selected
+		 * @param detailTable
+		 *            the master table of the detail level
+		 */
+		public void loadRows(IDataBag parentBag, ITable detailTable);
+	}
+
+	/**
+	 * A detail level below this controller and the state of its rows.
+	 */
+	private static class DetailLevel implements Serializable {
+		private static final long serialVersionUID = 1L;
+		private final MasterDetailController controller;
+		private final ITab tab;
+		private final IDetailLevelLoader loader;
+		private IDataBag parentBag;
+		private boolean stale = false;
+
+		DetailLevel(MasterDetailController controller, ITab tab, IDetailLevelLoader loader) {
+			this.controller = controller;
+			this.tab = tab;
+			this.loader = loader;
+		}
+
+		void invalidate(IDataBag bag) {
+			parentBag = bag;
+			stale = true;
+		}
+
+		/**
+		 * Load the rows of the level and select the first one, which cascades to the levels below.
+		 */
+		void refresh() {
+			stale = false;
+			loader.loadRows(parentBag, controller.table);
+			controller.selectFirstRow();
+		}
+	}
+
+	/**
+	 * Size bounded detail cache, the least recently used entry is evicted first.
+	 */
+	private static class DetailCache extends LinkedHashMap<Object, Object> {
+		private static final long serialVersionUID = 1L;
+		private final int maxSize;
+
+		DetailCache(int maxSize) {
+			super(16, 0.75f, true);
+			this.maxSize = maxSize;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Object, Object> eldest) {
+			return size() > maxSize;
+		}
+	}
+
+	/**
+	 * Delivers the row changes to the view listener one after another. Only the latest row change waiting for delivery
+	 * is kept, so a listener slower than the user skips the rows already left.
+	 */
+	private class ViewNotifier implements Runnable {
+		private IDataBag pending;
+		private IDataBag completed;
+		private boolean running = false;
+
+		void post(IDataBag bag) {
+			synchronized (this) {
+				pending = bag;
+				if (running)
+					return;
+				running = true;
+			}
+			try {
+				getNotificationExecutor().execute(this);
+			} catch (RejectedExecutionException e) {
+				run();
+			}
+		}
+
+		public void run() {
+			while (true) {
+				IDataBag bag;
+				synchronized (this) {
+					bag = pending;
+					pending = null;
+					if (bag == null) {
+						running = false;
+						return;
+					}
+				}
+				IMasterDetailViewListener listener = viewListener;
+				try {
+					if (listener != null)
+						listener.onRowChange(bag);
+				} catch (RuntimeException e) {
+					// log it and go on with the next row change
+					Log.error("View listener failed on row change", e);
+				}
+				synchronized (this) {
+					// a row change posted meanwhile supersedes this one
+					if (pending == null)
+						completed = bag;
+				}
+			}
+		}
+
+		synchronized IDataBag takeCompleted() {
+			IDataBag bag = completed;
+			completed = null;
+			return bag;
+		}
+	}
+
+	/**
+	 * The values of a compound's tracked properties when the EDIT mode was entered and the object they were read from.
+	 */
+	private static class PropertySnapshot {
+		private final Object object;
+		private final Object[] values;
+
+		PropertySnapshot(Object object, Object[] values) {
+			this.object = object;
+			this.values = values;
+		}
+	}
+
+	/**
+	 * The values of a compound's rendered properties at its last load and the detail version at that time.
+	 */
+	private static class RenderedValues {
+		private final Object[] values;
+		private final long version;
+
+		RenderedValues(Object[] values, long version) {
+			this.values = values;
+			this.version = version;
+		}
+
+		boolean isShowing(Object[] current, long currentVersion) {
+			return version == currentVersion && Arrays.equals(values, current);
+		}
+	}
+
+	/**
+	 * Background resolution of one row's details.
+	 */
+	private static class PrefetchTask extends FutureTask<Object> {
+		private volatile boolean started = false;
+
+		PrefetchTask(final IDetailResolver resolver, final IDataBag bag) {
+			super(new Callable<Object>() {
+				public Object call() throws Exception {
+					return resolver.resolve(bag);
+				}
+			});
+		}
+
+		@Override
+		public void run() {
+			started = true;
+			super.run();
+		}
+
+		boolean isStarted() {
+			return started;
+		}
+	}
+
 }
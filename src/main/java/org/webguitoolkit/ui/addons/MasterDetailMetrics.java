@@ -0,0 +1,224 @@
+package org.webguitoolkit.ui.addons;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Timings of master-detail interactions, registered as MBean under
+ * <code>org.webguitoolkit.ui.addons:type=MasterDetailController,name=&lt;name&gt;</code>. One instance per name is
+ * shared by all controllers (i.e. all sessions) using it, so usually the name of the view is used.
+ */
+public class MasterDetailMetrics implements MasterDetailMetricsMBean {
+
+	public static final String ACTION_NEW = "new";
+	public static final String ACTION_EDIT = "edit";
+	public static final String ACTION_SAVE = "save";
+	public static final String ACTION_CANCEL = "cancel";
+	public static final String ACTION_DELETE = "delete";
+
+	/**
+	 * Compound load times of compounds without a metrics name are recorded under this name.
+	 */
+	public static final String UNNAMED_COMPOUND = "unnamed";
+	/**
+	 * Compound load times of names beyond {@link #MAX_COMPOUND_NAMES} are recorded under this name.
+	 */
+	public static final String OTHER_COMPOUNDS = "others";
+	public static final int MAX_COMPOUND_NAMES = 100;
+
+	private static final ConcurrentMap<String, MasterDetailMetrics> INSTANCES = new ConcurrentHashMap<String, MasterDetailMetrics>();
+
+	private final String name;
+	private final LatencyHistogram rowChange = new LatencyHistogram();
+	private final LatencyHistogram tabChange = new LatencyHistogram();
+	private final ConcurrentMap<String, LatencyHistogram> buttonBarActions = new ConcurrentHashMap<String, LatencyHistogram>();
+	private final ConcurrentMap<String, LatencyHistogram> compoundLoads = new ConcurrentHashMap<String, LatencyHistogram>();
+	private final AtomicLong unsavedChangesPopups = new AtomicLong();
+
+	private MasterDetailMetrics(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Get the metrics registered under the passed name, they are created and registered at the platform MBean server
+	 * on first access.
+	 * 
+	 * @param name
+	 *            the name of the metrics, e.g. the name of the view
+	 * @return the metrics
+	 */
+	public static MasterDetailMetrics getInstance(String name) {
+		if (name == null)
+			throw new IllegalArgumentException("name must be not null");
+		MasterDetailMetrics metrics = INSTANCES.get(name);
+		if (metrics == null) {
+			MasterDetailMetrics created = new MasterDetailMetrics(name);
+			metrics = INSTANCES.putIfAbsent(name, created);
+			if (metrics == null) {
+				created.register();
+				metrics = created;
+			}
+		}
+		return metrics;
+	}
+
+	/**
+	 * Register at the MBean server. An MBean left under the same name, e.g. by an earlier deployment of the application
+	 * that was not unregistered, is replaced, so it does not keep its class loader and the new metrics are shown.
+	 */
+	private void register() {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			try {
+				server.registerMBean(this, getObjectName());
+			} catch (InstanceAlreadyExistsException e) {
+				server.unregisterMBean(getObjectName());
+				server.registerMBean(this, getObjectName());
+			}
+		} catch (JMException e) {
+			throw new IllegalStateException("Could not register metrics " + name, e);
+		}
+	}
+
+	/**
+	 * Remove all metrics of this class loader from the registry and the MBean server. Call it when the application is
+	 * stopped, e.g. in ServletContextListener.contextDestroyed().
+	 */
+	public static void unregisterAll() {
+		for (MasterDetailMetrics metrics : INSTANCES.values()) {
+			metrics.unregister();
+		}
+	}
+
+	/**
+	 * Remove the metrics from the registry and the MBean server.
+	 */
+	public void unregister() {
+		INSTANCES.remove(name, this);
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			if (server.isRegistered(getObjectName()))
+				server.unregisterMBean(getObjectName());
+		} catch (JMException e) {
+			throw new IllegalStateException("Could not unregister metrics " + name, e);
+		}
+	}
+
+	private ObjectName getObjectName() throws JMException {
+		return new ObjectName("org.webguitoolkit.ui.addons:type=MasterDetailController,name="
+				+ ObjectName.quote(name));
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	void recordRowChange(long nanos) {
+		rowChange.record(nanos);
+	}
+
+	void recordTabChange(long nanos) {
+		tabChange.record(nanos);
+	}
+
+	void recordButtonBarAction(String action, long nanos) {
+		getHistogram(buttonBarActions, action).record(nanos);
+	}
+
+	/**
+	 * @param compoundName
+	 *            the metrics name of the compound, <code>null</code> if it has none
+	 */
+	void recordCompoundLoad(String compoundName, long nanos) {
+		String key = (compoundName != null) ? compoundName : UNNAMED_COMPOUND;
+		// the instances live as long as the VM, keep the number of histograms bounded
+		if (!compoundLoads.containsKey(key) && compoundLoads.size() >= MAX_COMPOUND_NAMES)
+			key = OTHER_COMPOUNDS;
+		getHistogram(compoundLoads, key).record(nanos);
+	}
+
+	void recordUnsavedChangesPopup() {
+		unsavedChangesPopups.incrementAndGet();
+	}
+
+	private static LatencyHistogram getHistogram(ConcurrentMap<String, LatencyHistogram> histograms, String key) {
+		LatencyHistogram histogram = histograms.get(key);
+		if (histogram == null) {
+			LatencyHistogram created = new LatencyHistogram();
+			histogram = histograms.putIfAbsent(key, created);
+			if (histogram == null)
+				histogram = created;
+		}
+		return histogram;
+	}
+
+	public long getRowChangeCount() {
+		return rowChange.getCount();
+	}
+
+	public String getRowChangeLatency() {
+		return rowChange.toString();
+	}
+
+	public double getRowChangeP95Millis() {
+		return rowChange.getPercentileMillis(95);
+	}
+
+	public String getTabChangeLatency() {
+		return tabChange.toString();
+	}
+
+	public double getTabChangeP95Millis() {
+		return tabChange.getPercentileMillis(95);
+	}
+
+	public String[] getButtonBarLatencies() {
+		return summarize(buttonBarActions);
+	}
+
+	public String[] getCompoundLoadTimes() {
+		return summarize(compoundLoads);
+	}
+
+	public long getUnsavedChangesPopupCount() {
+		return unsavedChangesPopups.get();
+	}
+
+	public void reset() {
+		rowChange.reset();
+		tabChange.reset();
+		buttonBarActions.clear();
+		compoundLoads.clear();
+		unsavedChangesPopups.set(0);
+	}
+
+	/**
+	 * @return one line per histogram, the one with the highest mean first
+	 */
+	private static String[] summarize(Map<String, LatencyHistogram> histograms) {
+		List<Map.Entry<String, LatencyHistogram>> entries = new ArrayList<Map.Entry<String, LatencyHistogram>>(
+				histograms.entrySet());
+		Collections.sort(entries, new Comparator<Map.Entry<String, LatencyHistogram>>() {
+			public int compare(Map.Entry<String, LatencyHistogram> o1, Map.Entry<String, LatencyHistogram> o2) {
+				return Double.compare(o2.getValue().getMeanMillis(), o1.getValue().getMeanMillis());
+			}
+		});
+		String[] result = new String[entries.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = entries.get(i).getKey() + ": " + entries.get(i).getValue();
+		}
+		return result;
+	}
+}
@@ -0,0 +1,32 @@
+package org.webguitoolkit.ui.addons;
+
+/**
+ * JMX view on the timings of the MasterDetailControllers sharing one {@link MasterDetailMetrics} instance. Latencies
+ * are reported as "count mean p50 p95 p99 max" summaries in milliseconds.
+ */
+public interface MasterDetailMetricsMBean {
+
+	public long getRowChangeCount();
+
+	public String getRowChangeLatency();
+
+	public double getRowChangeP95Millis();
+
+	public String getTabChangeLatency();
+
+	public double getTabChangeP95Millis();
+
+	/**
+	 * @return one summary per button bar action (new, edit, save, cancel, delete)
+	 */
+	public String[] getButtonBarLatencies();
+
+	/**
+	 * @return one summary per compound metrics name, the slowest compound first
+	 */
+	public String[] getCompoundLoadTimes();
+
+	public long getUnsavedChangesPopupCount();
+
+	public void reset();
+}
@@ -0,0 +1,143 @@
+package org.webguitoolkit.ui.addons;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+import org.webguitoolkit.ui.base.IDataBag;
+
+/**
+ * A read only table data list that fetches the rows window by window from a page provider. Only the current window
+ * (the visible rows plus a margin on both sides) is wrapped into DataBags and kept, so the memory used does not depend
+ * on the size of the result. <br>
+ * The size is taken from the provider and cached until {@link #refresh()} is called. add() and remove() do not change
+ * the list but refresh it, they are meant to be called after the change has been done in the provider's source.
+ */
+public class PagedDataList extends AbstractList<IDataBag> implements RandomAccess, Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final IPageProvider provider;
+	private final int windowSize;
+	private final int margin;
+
+	// transient fields are false and 0 after deserialization, so the size is read again
+	private transient boolean sizeKnown;
+	private transient int size;
+	private transient int windowStart = 0;
+	private transient List<IDataBag> window;
+
+	/**
+	 * @param provider
+	 *            the source of the rows
+	 * @param visibleRows
+	 *            the number of rows the table shows
+	 * @param margin
+	 *            the number of rows fetched additionally before and after the visible rows
+	 */
+	public PagedDataList(IPageProvider provider, int visibleRows, int margin) {
+		if (provider == null)
+			throw new IllegalArgumentException("provider must be not null");
+		if (visibleRows <= 0 || margin < 0)
+			throw new IllegalArgumentException("visibleRows must be positive and margin must not be negative");
+		this.provider = provider;
+		this.windowSize = visibleRows + 2 * margin;
+		this.margin = margin;
+	}
+
+	@Override
+	public IDataBag get(int index) {
+		if (index < 0 || index >= size())
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+		if (window == null || index < windowStart || index >= windowStart + window.size())
+			fetchWindow(index);
+		return window.get(index - windowStart);
+	}
+
+	/**
+	 * Fetch the window around the passed index, the index is placed after the leading margin.
+	 */
+	private void fetchWindow(int index) {
+		int start = Math.max(0, Math.min(index - margin, size() - windowSize));
+		int count = Math.min(windowSize, size() - start);
+		window = DataUtility.wrap(provider.getRows(start, count));
+		windowStart = start;
+		if (index >= windowStart + window.size()) {
+			// the source shrunk since the size was read
+			refresh();
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+		}
+	}
+
+	@Override
+	public int size() {
+		if (!sizeKnown) {
+			size = provider.getRowCount();
+			sizeKnown = true;
+		}
+		return size;
+	}
+
+	/**
+	 * Read the size again and drop the current window.
+	 */
+	public void refresh() {
+		sizeKnown = false;
+		window = null;
+	}
+
+	/**
+	 * Look for the row in the current window only, so no rows are fetched.
+	 * 
+	 * @return the absolute index of the row wrapping the same object, -1 if it is not in the current window
+	 */
+	public int indexOfLoaded(IDataBag bag) {
+		if (window == null || bag == null)
+			return -1;
+		for (int i = 0; i < window.size(); i++) {
+			IDataBag row = window.get(i);
+			if (row == bag || (row.getObject() != null && row.getObject() == bag.getObject()))
+				return windowStart + i;
+		}
+		return -1;
+	}
+
+	/**
+	 * The row has already been added to the source, refresh the list.
+	 */
+	@Override
+	public void add(int index, IDataBag element) {
+		refresh();
+	}
+
+	/**
+	 * The row has already been removed from the source, refresh the list.
+	 */
+	@Override
+	public IDataBag remove(int index) {
+		IDataBag removed = (window != null && index >= windowStart && index < windowStart + window.size()) ? window
+				.get(index - windowStart) : null;
+		refresh();
+		return removed;
+	}
+
+	/**
+	 * Source of the rows of a PagedDataList, e.g. a paged database query.
+	 */
+	public interface IPageProvider extends Serializable {
+		/**
+		 * @return the total number of rows
+		 */
+		public int getRowCount();
+
+		/**
+		 * @param first
+		 *            the index of the first row
+		 * @param count
+		 *            the maximum number of rows
+		 * @return the unwrapped objects of the rows
+		 */
+		public List<?> getRows(int first, int count);
+	}
+}
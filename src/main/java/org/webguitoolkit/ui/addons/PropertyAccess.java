@@ -0,0 +1,166 @@
+package org.webguitoolkit.ui.addons;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Reads and writes property paths like "customer.name", "positions.size" or "map(key_3).value" on plain objects with
+ * their get-, is- and set-methods. A segment "name(key)" reads the entry of the map returned by getName(). <br>
+ * Each path is parsed once, the accessor methods of each segment are looked up once per class and kept, so repeated
+ * reads and writes only invoke the methods. At most MAX_PATHS paths are kept, the cache is cleared when more are used,
+ * e.g. by map segments with generated keys. <br>
+ * Used for the property access of this library only, e.g. change tracking and the TableIndex. The DataBags created
+ * here are plain toolkit DataBags, the loading and saving of the bound controls does not go through these accessors.
+ */
+class PropertyAccess {
+
+	static final int MAX_PATHS = 1000;
+
+	private static final ConcurrentMap<String, Segment[]> paths = new ConcurrentHashMap<String, Segment[]>();
+
+	private PropertyAccess() {
+	}
+
+	/**
+	 * @return the value of the path, <code>null</code> if an object on the path is <code>null</code>
+	 */
+	static Object read(Object object, String path) {
+		for (Segment segment : parse(path)) {
+			if (object == null)
+				return null;
+			object = segment.read(object);
+		}
+		return object;
+	}
+
+	/**
+	 * Set the last property of the path. Nothing is done if an object on the path is <code>null</code>.
+	 */
+	static void write(Object object, String path, Object value) {
+		Segment[] segments = parse(path);
+		for (int i = 0; i < segments.length - 1 && object != null; i++) {
+			object = segments[i].read(object);
+		}
+		if (object == null)
+			return;
+		segments[segments.length - 1].write(object, value);
+	}
+
+	private static Segment[] parse(String path) {
+		Segment[] segments = paths.get(path);
+		if (segments == null) {
+			String[] names = path.split("\\.");
+			segments = new Segment[names.length];
+			for (int i = 0; i < names.length; i++) {
+				segments[i] = new Segment(names[i]);
+			}
+			// parsing again is cheaper than keeping every path ever used
+			if (paths.size() >= MAX_PATHS)
+				paths.clear();
+			Segment[] parsed = paths.putIfAbsent(path, segments);
+			if (parsed != null)
+				segments = parsed;
+		}
+		return segments;
+	}
+
+	/**
+	 * @return the number of paths kept
+	 */
+	static int getCachedPaths() {
+		return paths.size();
+	}
+
+	private static String capitalize(String name) {
+		return name.substring(0, 1).toUpperCase() + name.substring(1);
+	}
+
+	/**
+	 * One segment of a path with its accessor methods per class.
+	 */
+	private static final class Segment {
+		private final String name;
+		// the map key of a segment "name(key)", null otherwise
+		private final String key;
+		private final ConcurrentMap<Class<?>, Method> getters = new ConcurrentHashMap<Class<?>, Method>();
+		private final ConcurrentMap<Class<?>, Method> setters = new ConcurrentHashMap<Class<?>, Method>();
+
+		Segment(String segment) {
+			int open = segment.indexOf('(');
+			if (open > 0 && segment.endsWith(")")) {
+				name = segment.substring(0, open);
+				key = segment.substring(open + 1, segment.length() - 1);
+			} else {
+				name = segment;
+				key = null;
+			}
+		}
+
+		Object read(Object object) {
+			if (key == null && "size".equals(name) && object instanceof Collection)
+				return ((Collection<?>) object).size();
+			Object value = invoke(getter(object.getClass()), object, "read");
+			if (key == null || value == null)
+				return value;
+			return ((Map<?, ?>) value).get(key);
+		}
+
+		@SuppressWarnings("unchecked")
+		void write(Object object, Object value) {
+			if (key != null) {
+				Map<Object, Object> map = (Map<Object, Object>) invoke(getter(object.getClass()), object, "write");
+				if (map != null)
+					map.put(key, value);
+				return;
+			}
+			invoke(setter(object.getClass()), object, "write", value);
+		}
+
+		private Method getter(Class<?> clazz) {
+			Method getter = getters.get(clazz);
+			if (getter == null) {
+				String suffix = capitalize(name);
+				try {
+					try {
+						getter = clazz.getMethod("get" + suffix);
+					} catch (NoSuchMethodException e) {
+						getter = clazz.getMethod("is" + suffix);
+					}
+				} catch (NoSuchMethodException e) {
+					throw new IllegalArgumentException("Cannot read property " + name + " of " + clazz, e);
+				}
+				getters.put(clazz, getter);
+			}
+			return getter;
+		}
+
+		private Method setter(Class<?> clazz) {
+			Method setter = setters.get(clazz);
+			if (setter == null) {
+				String setterName = "set" + capitalize(name);
+				for (Method method : clazz.getMethods()) {
+					if (method.getName().equals(setterName) && method.getParameterTypes().length == 1) {
+						setter = method;
+						break;
+					}
+				}
+				if (setter == null)
+					throw new IllegalArgumentException("No setter for property " + name + " of " + clazz);
+				setters.put(clazz, setter);
+			}
+			return setter;
+		}
+
+		private Object invoke(Method method, Object object, String access, Object... args) {
+			try {
+				return method.invoke(object, args);
+			} catch (Exception e) {
+				throw new IllegalArgumentException("Cannot " + access + " property " + name + " of " + object.getClass(),
+						e);
+			}
+		}
+	}
+}
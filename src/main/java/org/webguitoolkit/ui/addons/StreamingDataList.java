@@ -0,0 +1,165 @@
+package org.webguitoolkit.ui.addons;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.RandomAccess;
+
+import org.webguitoolkit.ui.base.IDataBag;
+
+/**
+ * A table data list reading the rows chunk by chunk from an iterator, e.g. over a database cursor or a file export.
+ * Rows are read when the table accesses them, so the first page can be shown before the whole source has been read.
+ * One chunk ahead of the last accessed row is kept read, the rows read are wrapped lazily. <br>
+ * The size is the number of rows read so far plus one while the source has more rows, it becomes exact when the end of
+ * the source is reached. <br>
+ * An iterator implementing Closeable, e.g. over a database cursor, is closed at its end. The owner of the list must
+ * call close() when the list is dropped before, e.g. when the table gets other rows. Serialization closes it too,
+ * the source is not kept in the session: the list contains the rows read so far and is truncated afterwards. <br>
+ * Changes of the list affect the rows read only, the source is not changed.
+ */
+public class StreamingDataList extends AbstractList<IDataBag> implements RandomAccess, Serializable, Closeable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final int chunkSize;
+	private final List<Object> rows = new ArrayList<Object>();
+	private final LazyDataList bags = new LazyDataList(rows);
+
+	private transient Iterator<?> source;
+	// the source was closed before its end
+	private transient boolean truncated;
+
+	/**
+	 * @param source
+	 *            the objects to wrap
+	 * @param chunkSize
+	 *            the number of rows read at once, should be at least the number of rows the table shows
+	 */
+	public StreamingDataList(Iterator<?> source, int chunkSize) {
+		if (source == null)
+			throw new IllegalArgumentException("source must be not null");
+		if (chunkSize <= 0)
+			throw new IllegalArgumentException("chunkSize must be positive");
+		this.source = source;
+		this.chunkSize = chunkSize;
+		readChunk();
+	}
+
+	@Override
+	public IDataBag get(int index) {
+		// keep a chunk ahead, the table shows rows after the accessed one
+		while (index >= rows.size() - chunkSize && source != null) {
+			readChunk();
+		}
+		return bags.get(index);
+	}
+
+	@Override
+	public int size() {
+		return (source == null) ? rows.size() : rows.size() + 1;
+	}
+
+	/**
+	 * Look for the row among the rows read so far, nothing more is read.
+	 * 
+	 * @return the index of the row wrapping the same object, -1 if it has not been read and wrapped yet
+	 */
+	public int indexOfLoaded(IDataBag bag) {
+		return bags.indexOfLoaded(bag);
+	}
+
+	/**
+	 * @return <code>true</code> if the whole source has been read
+	 */
+	public boolean isComplete() {
+		return source == null && !truncated;
+	}
+
+	/**
+	 * @return <code>true</code> if the list was closed or serialized before the end of the source was reached, it
+	 *         contains the rows read until then only
+	 */
+	public boolean isTruncated() {
+		return truncated;
+	}
+
+	/**
+	 * Read the rest of the source, e.g. before the rows are sorted. A truncated list keeps its rows.
+	 */
+	public void readAll() {
+		while (source != null) {
+			readChunk();
+		}
+	}
+
+	private void readChunk() {
+		for (int i = 0; i < chunkSize && source.hasNext(); i++) {
+			rows.add(source.next());
+		}
+		if (!source.hasNext()) {
+			try {
+				closeSource();
+			} catch (IOException e) {
+				throw new IllegalStateException("closing the source failed", e);
+			}
+		}
+	}
+
+	/**
+	 * Close the source if it has not been read to its end, the list keeps the rows read and is truncated.
+	 */
+	public void close() throws IOException {
+		if (source == null)
+			return;
+		truncated = true;
+		closeSource();
+	}
+
+	private void closeSource() throws IOException {
+		Iterator<?> closed = source;
+		source = null;
+		if (closed instanceof Closeable)
+			((Closeable) closed).close();
+	}
+
+	@Override
+	public void add(int index, IDataBag element) {
+		if (index > rows.size())
+			readAll();
+		bags.add(index, element);
+		modCount++;
+	}
+
+	@Override
+	public IDataBag remove(int index) {
+		IDataBag removed = get(index);
+		bags.remove(index);
+		modCount++;
+		return removed;
+	}
+
+	@Override
+	public IDataBag set(int index, IDataBag element) {
+		get(index);
+		return bags.set(index, element);
+	}
+
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		// the source does not survive the session, do not leave it open
+		close();
+		out.defaultWriteObject();
+		out.writeBoolean(truncated);
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		truncated = in.readBoolean();
+	}
+}
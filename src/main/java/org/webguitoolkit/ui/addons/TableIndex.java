@@ -0,0 +1,704 @@
+package org.webguitoolkit.ui.addons;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+import org.webguitoolkit.ui.base.IDataBag;
+
+/**
+ * Server side sort and filter engine for table rows. The column values are extracted once per load and kept per
+ * column in primitive arrays: int, long, double and boolean columns without boxing, strings encoded by a sorted
+ * dictionary. Per column a sort order and a text index are built on first use. Sorting and filtering return views on
+ * the rows, the bags are not copied. <br>
+ * Repeated sorts on a column cost O(1), a filter costs O(log n + k log k) for k matching rows.<br>
+ * Changes through the views (add, remove, set) are passed to the rows and drop the extracted values, so the next query
+ * extracts them again.
+ */
+public class TableIndex implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final List<IDataBag> rows;
+	private final List<String> properties;
+
+	// values extracted from the rows
+	private transient Column[] columns;
+	// row ids in ascending order per column
+	private transient int[][] sortOrders;
+	// position of each row in the ascending order per column, [column][row]
+	private transient int[][] ranks;
+	// row ids ordered by the lower case text per column and the sorted texts
+	private transient int[][] textOrders;
+	private transient String[][] sortedTexts;
+
+	/**
+	 * @param rows
+	 *            the rows of the table, the list is not copied
+	 * @param properties
+	 *            the properties of the columns that can be sorted and filtered
+	 */
+	public TableIndex(List<IDataBag> rows, String... properties) {
+		if (rows == null)
+			throw new IllegalArgumentException("rows must be not null");
+		this.rows = rows;
+		this.properties = Arrays.asList(properties);
+	}
+
+	/**
+	 * @return the rows the index was created for
+	 */
+	public List<IDataBag> getRows() {
+		return rows;
+	}
+
+	/**
+	 * @return the rows a view returned by an index was built on, the passed rows if they are no view
+	 */
+	public static List<IDataBag> getBaseRows(List<IDataBag> rows) {
+		if (rows instanceof IndexedRowList)
+			return ((IndexedRowList) rows).getIndex().getRows();
+		return rows;
+	}
+
+	/**
+	 * @return the value of the property in the row, read from the extracted values, e.g. for renderers
+	 */
+	public Object getValue(int row, String property) {
+		return getColumns()[column(property)].get(row);
+	}
+
+	/**
+	 * Extract the values now instead of on the first query.
+	 */
+	void extractValues() {
+		getColumns();
+	}
+
+	/**
+	 * Drop the extracted values, they are extracted again on the next query.
+	 */
+	public void invalidate() {
+		columns = null;
+		sortOrders = null;
+		ranks = null;
+		textOrders = null;
+		sortedTexts = null;
+	}
+
+	/**
+	 * @return all rows sorted by the property
+	 */
+	public List<IDataBag> sort(String property, boolean ascending) {
+		return query(null, null, false, property, ascending);
+	}
+
+	/**
+	 * @return the rows whose property text starts with (or equals) the passed text, ignoring case, in their original
+	 *         order
+	 */
+	public List<IDataBag> filter(String property, String text, boolean exact) {
+		return query(property, text, exact, null, true);
+	}
+
+	/**
+	 * Filter and sort the rows.
+	 * 
+	 * @param filterProperty
+	 *            the property to filter, <code>null</code> for no filter
+	 * @param text
+	 *            the filter text, compared ignoring case
+	 * @param exact
+	 *            <code>true</code> if the text must match completely, otherwise it is a prefix
+	 * @param sortProperty
+	 *            the property to sort, <code>null</code> to keep the original order
+	 * @param ascending
+	 *            the sort direction
+	 * @return a view on the matching rows
+	 */
+	public List<IDataBag> query(String filterProperty, String text, boolean exact, String sortProperty,
+			boolean ascending) {
+		int[] ids;
+		if (filterProperty != null && text != null) {
+			ids = filterIds(column(filterProperty), text.toLowerCase(), exact);
+			if (sortProperty != null)
+				ids = sortIds(ids, column(sortProperty), ascending);
+		} else if (sortProperty != null) {
+			int[] order = getSortOrder(column(sortProperty));
+			ids = ascending ? order : reverse(order);
+		} else {
+			ids = new int[rows.size()];
+			for (int i = 0; i < ids.length; i++) {
+				ids[i] = i;
+			}
+		}
+		return new IndexedRowList(ids);
+	}
+
+	private int column(String property) {
+		int column = properties.indexOf(property);
+		if (column < 0)
+			throw new IllegalArgumentException("property is not indexed : " + property);
+		return column;
+	}
+
+	/**
+	 * Extract the values of all columns, each getter is called once per row. The rows of a LazyDataList are not
+	 * wrapped for this.
+	 */
+	private Column[] getColumns() {
+		if (columns == null) {
+			int size = rows.size();
+			Object[] objects = new Object[size];
+			for (int row = 0; row < size; row++) {
+				if (rows instanceof LazyDataList) {
+					objects[row] = ((LazyDataList) rows).getObject(row);
+				} else {
+					IDataBag bag = rows.get(row);
+					objects[row] = (bag != null) ? bag.getObject() : null;
+				}
+			}
+			Column[] result = new Column[properties.size()];
+			Object[] values = new Object[size];
+			for (int column = 0; column < result.length; column++) {
+				for (int row = 0; row < size; row++) {
+					values[row] = PropertyAccess.read(objects[row], properties.get(column));
+				}
+				result[column] = createColumn(values);
+			}
+			columns = result;
+			sortOrders = new int[result.length][];
+			ranks = new int[result.length][];
+			textOrders = new int[result.length][];
+			sortedTexts = new String[result.length][];
+		}
+		return columns;
+	}
+
+	/**
+	 * Create the most compact column for the values, the type is taken from the non null values.
+	 */
+	private static Column createColumn(Object[] values) {
+		Class<?> type = null;
+		for (Object value : values) {
+			if (value == null)
+				continue;
+			if (type == null)
+				type = value.getClass();
+			else if (type != value.getClass())
+				return new ObjectColumn(values);
+		}
+		if (type == Integer.class || type == Short.class || type == Byte.class)
+			return new IntColumn(values);
+		if (type == Long.class)
+			return new LongColumn(values);
+		if (type == Double.class || type == Float.class)
+			return new DoubleColumn(values);
+		if (type == Boolean.class)
+			return new BooleanColumn(values);
+		if (type == String.class)
+			return new StringColumn(values);
+		return new ObjectColumn(values);
+	}
+
+	/**
+	 * Sort all rows by the column with a stable merge sort of row ids, no values are boxed.
+	 */
+	private int[] getSortOrder(int column) {
+		Column values = getColumns()[column];
+		if (sortOrders[column] == null) {
+			int[] sortOrder = new int[values.size()];
+			for (int i = 0; i < sortOrder.length; i++) {
+				sortOrder[i] = i;
+			}
+			mergeSort(sortOrder.clone(), sortOrder, 0, sortOrder.length, values);
+			int[] rank = new int[sortOrder.length];
+			for (int i = 0; i < sortOrder.length; i++) {
+				rank[sortOrder[i]] = i;
+			}
+			sortOrders[column] = sortOrder;
+			ranks[column] = rank;
+		}
+		return sortOrders[column];
+	}
+
+	private static void mergeSort(int[] src, int[] dest, int from, int to, Column column) {
+		if (to - from < 8) {
+			// insertion sort for small ranges
+			for (int i = from + 1; i < to; i++) {
+				int id = dest[i];
+				int j = i;
+				while (j > from && column.compare(dest[j - 1], id) > 0) {
+					dest[j] = dest[j - 1];
+					j--;
+				}
+				dest[j] = id;
+			}
+			return;
+		}
+		int mid = (from + to) >>> 1;
+		mergeSort(dest, src, from, mid, column);
+		mergeSort(dest, src, mid, to, column);
+		for (int i = from, p = from, q = mid; i < to; i++) {
+			if (q >= to || (p < mid && column.compare(src[p], src[q]) <= 0))
+				dest[i] = src[p++];
+			else
+				dest[i] = src[q++];
+		}
+	}
+
+	/**
+	 * Sort a subset of rows by the ranks of the column, no values are compared.
+	 */
+	private int[] sortIds(int[] ids, int column, boolean ascending) {
+		getSortOrder(column);
+		int[] rank = ranks[column];
+		long[] keys = new long[ids.length];
+		for (int i = 0; i < ids.length; i++) {
+			keys[i] = ((long) rank[ids[i]] << 32) | ids[i];
+		}
+		Arrays.sort(keys);
+		int[] result = new int[ids.length];
+		for (int i = 0; i < ids.length; i++) {
+			result[ascending ? i : ids.length - 1 - i] = (int) keys[i];
+		}
+		return result;
+	}
+
+	/**
+	 * Find the rows by binary search in the text order of the column.
+	 * 
+	 * @return the matching row ids in original order
+	 */
+	private int[] filterIds(int column, String text, boolean exact) {
+		Column values = getColumns()[column];
+		if (textOrders[column] == null) {
+			final String[] texts = new String[values.size()];
+			Integer[] order = new Integer[texts.length];
+			for (int i = 0; i < texts.length; i++) {
+				texts[i] = values.getText(i);
+				order[i] = i;
+			}
+			Arrays.sort(order, new Comparator<Integer>() {
+				public int compare(Integer o1, Integer o2) {
+					return texts[o1].compareTo(texts[o2]);
+				}
+			});
+			int[] textOrder = new int[order.length];
+			String[] sorted = new String[order.length];
+			for (int i = 0; i < order.length; i++) {
+				textOrder[i] = order[i];
+				sorted[i] = texts[order[i]];
+			}
+			textOrders[column] = textOrder;
+			sortedTexts[column] = sorted;
+		}
+		String[] sorted = sortedTexts[column];
+		int from = lowerBound(sorted, text);
+		int to = from;
+		while (to < sorted.length && (exact ? sorted[to].equals(text) : sorted[to].startsWith(text))) {
+			to++;
+		}
+		int[] ids = Arrays.copyOfRange(textOrders[column], from, to);
+		Arrays.sort(ids);
+		return ids;
+	}
+
+	private static int lowerBound(String[] sorted, String key) {
+		int low = 0;
+		int high = sorted.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (sorted[mid].compareTo(key) < 0)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low;
+	}
+
+	private static int[] reverse(int[] order) {
+		int[] result = new int[order.length];
+		for (int i = 0; i < order.length; i++) {
+			result[i] = order[order.length - 1 - i];
+		}
+		return result;
+	}
+
+	@SuppressWarnings("unchecked")
+	static int compareValues(Object o1, Object o2) {
+		if (o1 == o2)
+			return 0;
+		if (o1 == null)
+			return -1;
+		if (o2 == null)
+			return 1;
+		if (o1 instanceof Comparable && o1.getClass() == o2.getClass())
+			return ((Comparable<Object>) o1).compareTo(o2);
+		return String.valueOf(o1).compareTo(String.valueOf(o2));
+	}
+
+	/**
+	 * The values of one column.
+	 */
+	private abstract static class Column {
+		// rows with a null value
+		protected final BitSet nulls = new BitSet();
+
+		abstract Object get(int row);
+
+		/**
+		 * Compare the values of two rows, <code>null</code> first.
+		 */
+		int compare(int row1, int row2) {
+			boolean null1 = nulls.get(row1);
+			boolean null2 = nulls.get(row2);
+			if (null1 || null2)
+				return (null1 == null2) ? 0 : (null1 ? -1 : 1);
+			return compareValues(row1, row2);
+		}
+
+		abstract int compareValues(int row1, int row2);
+
+		/**
+		 * @return the lower case text of the value the filters match, an empty text for <code>null</code>
+		 */
+		String getText(int row) {
+			return nulls.get(row) ? "" : toText(row).toLowerCase();
+		}
+
+		/**
+		 * @return the text of the value, the row has a value
+		 */
+		abstract String toText(int row);
+
+		abstract int size();
+	}
+
+	private static class IntColumn extends Column {
+		private final int[] values;
+
+		IntColumn(Object[] objects) {
+			values = new int[objects.length];
+			for (int row = 0; row < objects.length; row++) {
+				if (objects[row] == null)
+					nulls.set(row);
+				else
+					values[row] = ((Number) objects[row]).intValue();
+			}
+		}
+
+		@Override
+		Object get(int row) {
+			return nulls.get(row) ? null : Integer.valueOf(values[row]);
+		}
+
+		@Override
+		int compareValues(int row1, int row2) {
+			int v1 = values[row1];
+			int v2 = values[row2];
+			return (v1 < v2) ? -1 : ((v1 == v2) ? 0 : 1);
+		}
+
+		@Override
+		String toText(int row) {
+			return Integer.toString(values[row]);
+		}
+
+		@Override
+		int size() {
+			return values.length;
+		}
+	}
+
+	private static class LongColumn extends Column {
+		private final long[] values;
+
+		LongColumn(Object[] objects) {
+			values = new long[objects.length];
+			for (int row = 0; row < objects.length; row++) {
+				if (objects[row] == null)
+					nulls.set(row);
+				else
+					values[row] = ((Long) objects[row]).longValue();
+			}
+		}
+
+		@Override
+		Object get(int row) {
+			return nulls.get(row) ? null : Long.valueOf(values[row]);
+		}
+
+		@Override
+		int compareValues(int row1, int row2) {
+			long v1 = values[row1];
+			long v2 = values[row2];
+			return (v1 < v2) ? -1 : ((v1 == v2) ? 0 : 1);
+		}
+
+		@Override
+		String toText(int row) {
+			return Long.toString(values[row]);
+		}
+
+		@Override
+		int size() {
+			return values.length;
+		}
+	}
+
+	private static class DoubleColumn extends Column {
+		private final double[] values;
+		// Float values are returned and shown as Float again
+		private final boolean isFloat;
+
+		DoubleColumn(Object[] objects) {
+			values = new double[objects.length];
+			boolean floats = false;
+			for (int row = 0; row < objects.length; row++) {
+				if (objects[row] == null) {
+					nulls.set(row);
+				} else {
+					values[row] = ((Number) objects[row]).doubleValue();
+					floats = objects[row] instanceof Float;
+				}
+			}
+			isFloat = floats;
+		}
+
+		@Override
+		Object get(int row) {
+			if (nulls.get(row))
+				return null;
+			return isFloat ? (Object) Float.valueOf((float) values[row]) : (Object) Double.valueOf(values[row]);
+		}
+
+		@Override
+		int compareValues(int row1, int row2) {
+			return Double.compare(values[row1], values[row2]);
+		}
+
+		@Override
+		String toText(int row) {
+			return isFloat ? Float.toString((float) values[row]) : Double.toString(values[row]);
+		}
+
+		@Override
+		int size() {
+			return values.length;
+		}
+	}
+
+	private static class BooleanColumn extends Column {
+		private final BitSet values = new BitSet();
+		private final int size;
+
+		BooleanColumn(Object[] objects) {
+			size = objects.length;
+			for (int row = 0; row < objects.length; row++) {
+				if (objects[row] == null)
+					nulls.set(row);
+				else if (((Boolean) objects[row]).booleanValue())
+					values.set(row);
+			}
+		}
+
+		@Override
+		Object get(int row) {
+			return nulls.get(row) ? null : Boolean.valueOf(values.get(row));
+		}
+
+		@Override
+		int compareValues(int row1, int row2) {
+			boolean v1 = values.get(row1);
+			return (v1 == values.get(row2)) ? 0 : (v1 ? 1 : -1);
+		}
+
+		@Override
+		String toText(int row) {
+			return Boolean.toString(values.get(row));
+		}
+
+		@Override
+		int size() {
+			return size;
+		}
+	}
+
+	/**
+	 * Strings encoded by their position in the sorted dictionary of distinct values, so the codes compare like the
+	 * values.
+	 */
+	private static class StringColumn extends Column {
+		private final String[] dictionary;
+		private final int[] codes;
+		// the lower case dictionary, built for the first filter
+		private String[] texts;
+
+		StringColumn(Object[] objects) {
+			Map<String, Integer> distinct = new HashMap<String, Integer>();
+			for (Object object : objects) {
+				if (object != null)
+					distinct.put((String) object, null);
+			}
+			dictionary = distinct.keySet().toArray(new String[distinct.size()]);
+			Arrays.sort(dictionary);
+			for (int i = 0; i < dictionary.length; i++) {
+				distinct.put(dictionary[i], i);
+			}
+			codes = new int[objects.length];
+			for (int row = 0; row < objects.length; row++) {
+				if (objects[row] == null)
+					nulls.set(row);
+				else
+					codes[row] = distinct.get(objects[row]);
+			}
+		}
+
+		@Override
+		Object get(int row) {
+			return nulls.get(row) ? null : dictionary[codes[row]];
+		}
+
+		@Override
+		int compareValues(int row1, int row2) {
+			return codes[row1] - codes[row2];
+		}
+
+		/**
+		 * Each distinct value is converted to lower case once.
+		 */
+		@Override
+		String getText(int row) {
+			if (nulls.get(row))
+				return "";
+			if (texts == null) {
+				texts = new String[dictionary.length];
+				for (int i = 0; i < dictionary.length; i++) {
+					texts[i] = dictionary[i].toLowerCase();
+				}
+			}
+			return texts[codes[row]];
+		}
+
+		@Override
+		String toText(int row) {
+			return dictionary[codes[row]];
+		}
+
+		@Override
+		int size() {
+			return codes.length;
+		}
+	}
+
+	/**
+	 * Values of mixed or other types.
+	 */
+	private static class ObjectColumn extends Column {
+		private final Object[] values;
+
+		ObjectColumn(Object[] objects) {
+			values = objects.clone();
+			for (int row = 0; row < values.length; row++) {
+				if (values[row] == null)
+					nulls.set(row);
+			}
+		}
+
+		@Override
+		Object get(int row) {
+			return values[row];
+		}
+
+		@Override
+		int compareValues(int row1, int row2) {
+			return TableIndex.compareValues(values[row1], values[row2]);
+		}
+
+		@Override
+		String toText(int row) {
+			return String.valueOf(values[row]);
+		}
+
+		@Override
+		int size() {
+			return values.length;
+		}
+	}
+
+	/**
+	 * View on the rows in the order of the passed row ids.
+	 */
+	private class IndexedRowList extends AbstractList<IDataBag> implements RandomAccess, Serializable {
+		private static final long serialVersionUID = 1L;
+		private int[] ids;
+
+		IndexedRowList(int[] ids) {
+			this.ids = ids;
+		}
+
+		TableIndex getIndex() {
+			return TableIndex.this;
+		}
+
+		@Override
+		public IDataBag get(int index) {
+			return rows.get(ids[index]);
+		}
+
+		@Override
+		public int size() {
+			return ids.length;
+		}
+
+		/**
+		 * Add the bag at the end of the rows and at the passed position in this view.
+		 */
+		@Override
+		public void add(int index, IDataBag element) {
+			rows.add(element);
+			int[] result = new int[ids.length + 1];
+			System.arraycopy(ids, 0, result, 0, index);
+			result[index] = rows.size() - 1;
+			System.arraycopy(ids, index, result, index + 1, ids.length - index);
+			ids = result;
+			modCount++;
+			invalidate();
+		}
+
+		/**
+		 * Remove the bag from the rows and from this view.
+		 */
+		@Override
+		public IDataBag remove(int index) {
+			int removedId = ids[index];
+			IDataBag removed = rows.remove(removedId);
+			int[] result = new int[ids.length - 1];
+			for (int i = 0, j = 0; i < ids.length; i++) {
+				if (i != index)
+					result[j++] = (ids[i] > removedId) ? ids[i] - 1 : ids[i];
+			}
+			ids = result;
+			modCount++;
+			invalidate();
+			return removed;
+		}
+
+		/**
+		 * Replace the bag in the rows, e.g. to move a row within this view.
+		 */
+		@Override
+		public IDataBag set(int index, IDataBag element) {
+			IDataBag replaced = rows.set(ids[index], element);
+			invalidate();
+			return replaced;
+		}
+	}
+}
@@ -105,6 +105,26 @@ public class UiPatternFactory {
 
 	}
 
+	/**
+	 * The property paths of the columns createTableForClass() creates for the class, e.g. to build a ColumnSnapshot of
+	 * the table data.
+	 * 
+	 * @param clazz
+	 *            the class of the table rows
+	 * @param ignore
+	 *            the names of the columns not to include
+	 * @return the property paths in column order
+	 */
+	public String[] getColumnProperties(Class clazz, String[] ignore) {
+		List ignoredFields = (ignore != null) ? (Arrays.asList(ignore)) : (Collections.emptyList());
+		List<String> result = new ArrayList<String>();
+		for (ColumnDescriptor col : createColumnDescriptors(clazz)) {
+			if (!ignoredFields.contains(col.getName()))
+				result.add(col.getName());
+		}
+		return result.toArray(new String[result.size()]);
+	}
+
 	/**
 	 * Create a Text field with Label in a SequentialTableayout
 	 * 
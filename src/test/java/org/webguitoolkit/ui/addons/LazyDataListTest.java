@@ -0,0 +1,53 @@
+package org.webguitoolkit.ui.addons;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.webguitoolkit.ui.base.DataBag;
+import org.webguitoolkit.ui.base.IDataBag;
+
+public class LazyDataListTest {
+
+	@Test
+	public void keepsBagsOfTheViewedRowsOnly() {
+		LazyDataList list = new LazyDataList(newObjects(1000000));
+		IDataBag last = list.get(999999);
+
+		assertEquals(1, list.loadedCount());
+		assertSame(last, list.get(999999));
+		assertEquals(999999, list.indexOfLoaded(last));
+	}
+
+	@Test
+	public void movesTheBagsOnAddAndRemove() {
+		List<Object> objects = newObjects(100);
+		LazyDataList list = new LazyDataList(objects);
+		IDataBag first = list.get(10);
+		IDataBag second = list.get(50);
+
+		IDataBag added = new DataBag("added");
+		list.add(20, added);
+		assertSame(added, list.get(20));
+		assertSame(second, list.get(51));
+		assertEquals(51, list.indexOfLoaded(second));
+
+		list.remove(10);
+		assertEquals(-1, list.indexOfLoaded(first));
+		assertEquals(19, list.indexOfLoaded(added));
+		assertEquals(50, list.indexOfLoaded(second));
+		assertEquals(100, objects.size());
+		assertSame(second.getObject(), objects.get(50));
+	}
+
+	private static List<Object> newObjects(int count) {
+		List<Object> objects = new ArrayList<Object>(count);
+		for (int i = 0; i < count; i++) {
+			objects.add(Integer.valueOf(i));
+		}
+		return objects;
+	}
+}
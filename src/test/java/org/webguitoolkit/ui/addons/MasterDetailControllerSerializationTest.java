@@ -0,0 +1,82 @@
+package org.webguitoolkit.ui.addons;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.webguitoolkit.ui.controls.tab.ITab;
+
+public class MasterDetailControllerSerializationTest {
+
+	// the controller of the fixture below took 4841 bytes when written with its fields
+	private static final int MAX_CONTROLLER_BYTES = 3500;
+
+	@Test
+	public void controllerIsWrittenCompactly() throws Exception {
+		MasterDetailReplay replay = newReplay();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		// the controls are kept in the session anyway, only the controller's own share is measured
+		List<Object> controls = new ArrayList<Object>();
+		controls.add(replay.table.getDefaultModel().getTableData());
+		controls.addAll(replay.compounds);
+		out.writeObject(controls);
+		out.flush();
+		int before = bytes.size();
+		out.writeObject(replay.controller);
+		out.close();
+		int controllerBytes = bytes.size() - before;
+
+		assertTrue(controllerBytes + " bytes", controllerBytes < MAX_CONTROLLER_BYTES);
+	}
+
+	@Test
+	public void restoredControllerKeepsItsCompoundsAndTabs() throws Exception {
+		MasterDetailReplay replay = newReplay();
+		replay.controller.setLazyTabLoading(true);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(new Object[] { replay.table, replay.tabStrip, replay.tabs, replay.compounds, replay.controller });
+		out.close();
+		Object[] restored = (Object[]) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))
+				.readObject();
+		StandInControls.StandInTable table = (StandInControls.StandInTable) restored[0];
+		StandInControls.StandInTabStrip tabStrip = (StandInControls.StandInTabStrip) restored[1];
+		@SuppressWarnings("unchecked")
+		List<ITab> tabs = (List<ITab>) restored[2];
+		@SuppressWarnings("unchecked")
+		List<StandInControls.StandInCompound> compounds = (List<StandInControls.StandInCompound>) restored[3];
+		assertNotSame(replay.controller, restored[4]);
+
+		StandInControls.StandInCompound onActiveTab = compounds.get(4);
+		StandInControls.StandInCompound onOtherTab = compounds.get(10);
+		int loads = onOtherTab.getLoads();
+		table.click(5);
+		table.selectionChange(5, true);
+		// the compounds of the active tab are loaded, the others when their tab is shown
+		assertSame(table.getRow(5), onActiveTab.getBag());
+		assertEquals(loads, onOtherTab.getLoads());
+		assertTrue(tabStrip.click(tabs.get(2)));
+		assertSame(table.getRow(5), onOtherTab.getBag());
+		assertEquals(loads + 1, onOtherTab.getLoads());
+		assertEquals(0, ((MasterDetailReplay.ReplayController) restored[4]).getPrompts());
+	}
+
+	private static MasterDetailReplay newReplay() {
+		MasterDetailReplay replay = new MasterDetailReplay(200, 6, 5);
+		for (int i = 0; i < replay.compounds.size(); i++) {
+			replay.controller.setCompoundMetricsName(replay.compounds.get(i), "compound" + i);
+		}
+		return replay;
+	}
+}
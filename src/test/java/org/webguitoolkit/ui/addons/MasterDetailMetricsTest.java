@@ -0,0 +1,33 @@
+package org.webguitoolkit.ui.addons;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.junit.Test;
+
+public class MasterDetailMetricsTest {
+
+	@Test
+	public void staleRegistrationIsReplaced() throws Exception {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName objectName = new ObjectName("org.webguitoolkit.ui.addons:type=MasterDetailController,name="
+				+ ObjectName.quote("redeployed"));
+		// left behind by an earlier deployment
+		server.registerMBean(new StandardMBean(new Runnable() {
+			public void run() {
+			}
+		}, Runnable.class), objectName);
+
+		MasterDetailMetrics.getInstance("redeployed");
+		assertEquals(MasterDetailMetrics.class.getName(), server.getMBeanInfo(objectName).getClassName());
+
+		MasterDetailMetrics.unregisterAll();
+		assertFalse(server.isRegistered(objectName));
+	}
+}
@@ -0,0 +1,431 @@
+package org.webguitoolkit.ui.addons;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.webguitoolkit.ui.base.DataBag;
+import org.webguitoolkit.ui.base.IDataBag;
+import org.webguitoolkit.ui.controls.event.ClientEvent;
+import org.webguitoolkit.ui.controls.form.IButtonBar;
+import org.webguitoolkit.ui.controls.form.IButtonBarListener;
+import org.webguitoolkit.ui.controls.form.ICompound;
+import org.webguitoolkit.ui.controls.tab.ITab;
+import org.webguitoolkit.ui.controls.tab.ITabStrip;
+import org.webguitoolkit.ui.controls.table.ITable;
+
+/**
+ * Replays master-detail interactions against a controller wired to stand-in controls and reports events per second,
+ * latency percentiles and allocated bytes per event. The events are row selection, goto row, tab change and the
+ * actions of the master button bar. Streams are generated or parsed from recorded lines like "select 12", "tab 2" or
+ * "save". <br>
+ * The "unsaved changes" dialog is answered with yes. Button bar actions that do not fit the mode of the master
+ * compound, e.g. "save" without "edit" before, are skipped.
+ */
+class MasterDetailReplay {
+
+	enum Type {
+		SELECT, GOTO, TAB, NEW, EDIT, SAVE, CANCEL, DELETE
+	}
+
+	static final class Event {
+		final Type type;
+		final int arg;
+
+		Event(Type type, int arg) {
+			this.type = type;
+			this.arg = arg;
+		}
+
+		/**
+		 * @param line
+		 *            the event type and, for select, goto and tab, the row or tab index, e.g. "select 12"
+		 */
+		static Event parse(String line) {
+			String[] parts = line.trim().split("\\s+");
+			Type type = Type.valueOf(parts[0].toUpperCase());
+			return new Event(type, (parts.length > 1) ? Integer.parseInt(parts[1]) : 0);
+		}
+
+		@Override
+		public String toString() {
+			String name = type.name().toLowerCase();
+			return (type == Type.SELECT || type == Type.GOTO || type == Type.TAB) ? name + " " + arg : name;
+		}
+	}
+
+	/**
+	 * Controller answering the "unsaved changes" dialog with yes.
+	 */
+	public static class ReplayController extends MasterDetailController {
+		private static final long serialVersionUID = 1L;
+		private int prompts;
+
+		public ReplayController() {
+		}
+
+		public ReplayController(ITable table, ITabStrip tabStrip, IButtonBar masterButtonBar, List<ICompound> compounds) {
+			super(table, tabStrip, masterButtonBar, compounds);
+		}
+
+		@Override
+		void showUnsavedCompoundsView(IConfirmationListener listener) {
+			prompts++;
+			listener.onYes(null);
+		}
+
+		int getPrompts() {
+			return prompts;
+		}
+	}
+
+	/**
+	 * The application's part of the master button bar: new items get a new bag and are added at the top on save.
+	 */
+	private static class MasterActions implements IButtonBarListener {
+		private static final long serialVersionUID = 1L;
+		private final StandInControls.StandInTable table;
+		private final ICompound compound;
+		private int nextId;
+
+		MasterActions(StandInControls.StandInTable table, ICompound compound, int nextId) {
+			this.table = table;
+			this.compound = compound;
+			this.nextId = nextId;
+		}
+
+		public void onNew(ClientEvent event) {
+			int id = nextId++;
+			compound.setBag(new DataBag(new StandInControls.Row(id, "new row " + id, 0)));
+			compound.changeElementMode(ICompound.MODE_NEW);
+		}
+
+		public void onEdit(ClientEvent event) {
+			compound.changeElementMode(ICompound.MODE_EDIT);
+		}
+
+		public void onSave(ClientEvent event) {
+			StandInControls.Row row = (StandInControls.Row) compound.getBag().getObject();
+			row.setAmount(row.getAmount() + 1);
+			if (compound.getMode() == ICompound.MODE_NEW)
+				table.getDefaultModel().getTableData().add(0, compound.getBag());
+			compound.changeElementMode(ICompound.MODE_READONLY);
+		}
+
+		public void onCancel(ClientEvent event) {
+			compound.changeElementMode(ICompound.MODE_READONLY);
+		}
+
+		public void onDelete(ClientEvent event) {
+			// deleted in the source, the controller removes the row
+		}
+	}
+
+	final StandInControls.StandInTable table = new StandInControls.StandInTable();
+	final StandInControls.StandInTabStrip tabStrip = new StandInControls.StandInTabStrip();
+	final List<ITab> tabs = new ArrayList<ITab>();
+	final List<StandInControls.StandInCompound> compounds = new ArrayList<StandInControls.StandInCompound>();
+	final StandInControls.StandInCompound masterCompound;
+	final StandInControls.StandInButtonBar masterButtonBar;
+	final ReplayController controller;
+
+	private int skipped;
+	private int mismatches;
+
+	/**
+	 * Build a controller over a table with the passed number of rows and tabs, the master compound is on the first tab.
+	 */
+	MasterDetailReplay(int rows, int tabCount, int compoundsPerTab) {
+		List<IDataBag> data = table.getDefaultModel().getTableData();
+		for (int i = 0; i < rows; i++) {
+			data.add(new DataBag(new StandInControls.Row(i, "row " + i, i * 1.5)));
+		}
+		List<List<ICompound>> compoundsOfTab = new ArrayList<List<ICompound>>();
+		for (int t = 0; t < tabCount; t++) {
+			tabs.add(StandInControls.newTab(tabStrip, "tab" + t));
+			List<ICompound> onTab = new ArrayList<ICompound>();
+			for (int c = 0; c < compoundsPerTab; c++) {
+				StandInControls.StandInCompound compound = new StandInControls.StandInCompound("compound" + t + "_" + c);
+				compounds.add(compound);
+				onTab.add(compound);
+			}
+			compoundsOfTab.add(onTab);
+		}
+		masterCompound = compounds.get(0);
+		masterButtonBar = new StandInControls.StandInButtonBar(masterCompound);
+		masterButtonBar.setListener(new MasterActions(table, masterCompound, rows));
+		controller = new ReplayController(table, tabStrip, masterButtonBar, new ArrayList<ICompound>(compounds));
+		for (int t = 0; t < tabCount; t++) {
+			controller.registerTab(tabs.get(t), compoundsOfTab.get(t));
+		}
+		tabStrip.selectTab(tabs.get(0));
+		controller.setActiveTab(tabs.get(0));
+		if (rows > 0)
+			table.selectionChange(0, true);
+	}
+
+	/**
+	 * Generate a stream of mostly row navigation around the current row, with tab changes, edits, new items and
+	 * deletions in between. Some edits are left by selecting another row, which shows the "unsaved changes" dialog.
+	 */
+	static List<Event> generate(long seed, int count, int rows, int tabCount) {
+		Random random = new Random(seed);
+		List<Event> events = new ArrayList<Event>(count + 2);
+		int row = 0;
+		while (events.size() < count) {
+			int dice = random.nextInt(100);
+			if (dice < 55) {
+				row = Math.max(0, Math.min(rows - 1, row + random.nextInt(7) - 3));
+				events.add(new Event(Type.SELECT, row));
+			} else if (dice < 65) {
+				row = random.nextInt(rows);
+				events.add(new Event(Type.GOTO, row));
+			} else if (dice < 80) {
+				events.add(new Event(Type.TAB, random.nextInt(tabCount)));
+			} else if (dice < 88) {
+				events.add(new Event(Type.EDIT, 0));
+				events.add(new Event(random.nextBoolean() ? Type.SAVE : Type.CANCEL, 0));
+			} else if (dice < 93) {
+				events.add(new Event(Type.NEW, 0));
+				events.add(new Event(Type.SAVE, 0));
+				rows++;
+			} else if (dice < 97) {
+				events.add(new Event(Type.EDIT, 0));
+				row = random.nextInt(rows);
+				events.add(new Event(Type.SELECT, row));
+			} else if (rows > 1) {
+				events.add(new Event(Type.DELETE, 0));
+				rows--;
+			}
+		}
+		return events.subList(0, count);
+	}
+
+	/**
+	 * Replay the events and measure each one.
+	 */
+	Report replay(List<Event> events) {
+		long[] latencies = new long[events.size()];
+		long allocatedBefore = allocatedBytes();
+		long start = System.nanoTime();
+		for (int i = 0; i < latencies.length; i++) {
+			Event event = events.get(i);
+			long eventStart = System.nanoTime();
+			apply(event);
+			latencies[i] = System.nanoTime() - eventStart;
+			verify(event);
+		}
+		long nanos = System.nanoTime() - start;
+		long allocated = (allocatedBefore < 0) ? -1 : allocatedBytes() - allocatedBefore;
+		return new Report(latencies, nanos, allocated);
+	}
+
+	void apply(Event event) {
+		List<IDataBag> rows = table.getDefaultModel().getTableData();
+		boolean readOnly = masterCompound.getMode() == ICompound.MODE_READONLY;
+		boolean hasItem = masterCompound.getBag() != null;
+		switch (event.type) {
+		case SELECT:
+		case GOTO:
+			if (rows.isEmpty())
+				break;
+			int row = Math.min(event.arg, rows.size() - 1);
+			table.click(row);
+			controller.changeRow(row, null, event.type == Type.SELECT);
+			return;
+		case TAB:
+			tabStrip.click(tabs.get(event.arg % tabs.size()));
+			return;
+		case NEW:
+			if (!readOnly)
+				break;
+			getMasterActions().onNew(null, masterCompound);
+			return;
+		case EDIT:
+			if (!readOnly || !hasItem)
+				break;
+			getMasterActions().onEdit(null, masterCompound);
+			return;
+		case SAVE:
+			if (readOnly)
+				break;
+			getMasterActions().onSave(null, masterCompound);
+			return;
+		case CANCEL:
+			if (readOnly)
+				break;
+			getMasterActions().onCancel(null, masterCompound);
+			return;
+		case DELETE:
+			if (!readOnly || !hasItem || rows.size() < 2)
+				break;
+			getMasterActions().onDelete(null, masterCompound);
+			return;
+		}
+		skipped++;
+	}
+
+	private MasterDetailController.DelegateButtonBarListener getMasterActions() {
+		return (MasterDetailController.DelegateButtonBarListener) masterButtonBar.getListener();
+	}
+
+	/**
+	 * After a row change the compounds of the selected tab must show the selected row.
+	 */
+	private void verify(Event event) {
+		if (event.type != Type.SELECT && event.type != Type.GOTO)
+			return;
+		if (table.getSelectedRowIndex() < 0)
+			return;
+		IDataBag selected = table.getRow(table.getSelectedRowIndex());
+		for (StandInControls.StandInCompound compound : compounds) {
+			if (compound.getBag() != selected)
+				mismatches++;
+		}
+	}
+
+	int getSkipped() {
+		return skipped;
+	}
+
+	int getMismatches() {
+		return mismatches;
+	}
+
+	/**
+	 * @return the bytes allocated by the current thread, -1 if the VM does not tell
+	 */
+	private static long allocatedBytes() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+			if (threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled())
+				return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+
+	static final class Report {
+		private final long[] latencies;
+		private final long nanos;
+		private final long allocatedBytes;
+
+		Report(long[] latencies, long nanos, long allocatedBytes) {
+			this.latencies = latencies.clone();
+			Arrays.sort(this.latencies);
+			this.nanos = nanos;
+			this.allocatedBytes = allocatedBytes;
+		}
+
+		int getEvents() {
+			return latencies.length;
+		}
+
+		double getEventsPerSecond() {
+			return (nanos == 0) ? 0 : latencies.length * 1e9 / nanos;
+		}
+
+		/**
+		 * @param percentile
+		 *            between 0 and 100
+		 */
+		double getPercentileMillis(double percentile) {
+			if (latencies.length == 0)
+				return 0;
+			int rank = (int) Math.ceil(latencies.length * percentile / 100.0);
+			return latencies[Math.max(0, Math.min(latencies.length - 1, rank - 1))] / 1e6;
+		}
+
+		/**
+		 * @return the bytes allocated per event, -1 if unknown
+		 */
+		long getBytesPerEvent() {
+			return (allocatedBytes < 0 || latencies.length == 0) ? -1 : allocatedBytes / latencies.length;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%d events, %.0f events/s, p50=%.3fms p95=%.3fms p99=%.3fms max=%.3fms, %d bytes/event",
+					getEvents(), getEventsPerSecond(), getPercentileMillis(50), getPercentileMillis(95),
+					getPercentileMillis(99), getPercentileMillis(100), getBytesPerEvent());
+		}
+	}
+
+	/**
+	 * Replay a recorded stream, one event per line, or a generated one and print the report.
+	 *
+	 * @param args
+	 *            the file of the recorded stream, none for a generated stream
+	 */
+	public static void main(String[] args) throws IOException {
+		int rows = 1000;
+		List<Event> events = new ArrayList<Event>();
+		if (args.length > 0) {
+			BufferedReader reader = new BufferedReader(new FileReader(args[0]));
+			try {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					if (line.trim().length() > 0 && !line.startsWith("#"))
+						events.add(Event.parse(line));
+				}
+			} finally {
+				reader.close();
+			}
+		} else {
+			events = generate(1, 20000, rows, 4);
+		}
+		// the first round warms up the JIT
+		new MasterDetailReplay(rows, 4, 3).replay(events);
+		MasterDetailReplay replay = new MasterDetailReplay(rows, 4, 3);
+		System.out.println(replay.replay(events));
+		System.out.println(replay.getSkipped() + " events skipped, " + replay.controller.getPrompts()
+				+ " unsaved changes dialogs, " + replay.getMismatches() + " rows with stale details");
+
+		// time to the first row of a large result, streamed against read into a list first
+		long streaming = Long.MAX_VALUE;
+		long readFirst = Long.MAX_VALUE;
+		for (int i = 0; i < 10; i++) {
+			streaming = Math.min(streaming, timeToFirstRow(200000, true));
+			readFirst = Math.min(readFirst, timeToFirstRow(200000, false));
+		}
+		System.out.println("first row of 200000: streamed " + streaming / 1000 + "us, read first " + readFirst / 1000
+				+ "us");
+	}
+
+	private static long timeToFirstRow(final int rows, boolean streaming) {
+		Iterator<Object> source = new Iterator<Object>() {
+			private int read;
+
+			public boolean hasNext() {
+				return read < rows;
+			}
+
+			public Object next() {
+				return new StandInControls.Row(read, "row " + read, read++ * 1.5);
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+		long start = System.nanoTime();
+		List<IDataBag> list;
+		if (streaming) {
+			list = DataUtility.wrap(source, 50);
+		} else {
+			List<Object> objects = new ArrayList<Object>();
+			while (source.hasNext()) {
+				objects.add(source.next());
+			}
+			list = DataUtility.wrapLazy(objects);
+		}
+		list.get(0);
+		return System.nanoTime() - start;
+	}
+}
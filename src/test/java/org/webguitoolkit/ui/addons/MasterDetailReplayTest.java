@@ -0,0 +1,114 @@
+package org.webguitoolkit.ui.addons;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.webguitoolkit.ui.controls.form.ICompound;
+
+public class MasterDetailReplayTest {
+
+	@Test
+	public void replayGeneratedStream() {
+		List<MasterDetailReplay.Event> events = MasterDetailReplay.generate(42, 5000, 500, 4);
+		// warm up
+		new MasterDetailReplay(500, 4, 3).replay(events);
+
+		MasterDetailReplay replay = new MasterDetailReplay(500, 4, 3);
+		MasterDetailReplay.Report report = replay.replay(events);
+
+		assertEquals(events.size(), report.getEvents());
+		assertEquals(0, replay.getMismatches());
+		assertTrue(replay.controller.getPrompts() > 0);
+	}
+
+	@Test
+	public void replayRecordedStream() {
+		String[] recorded = { "select 3", "tab 1", "goto 40", "edit", "save", "select 41", "edit", "select 7", "new",
+				"save", "delete", "tab 0", "select 2" };
+		List<MasterDetailReplay.Event> events = new ArrayList<MasterDetailReplay.Event>();
+		for (String line : recorded) {
+			events.add(MasterDetailReplay.Event.parse(line));
+		}
+		MasterDetailReplay replay = new MasterDetailReplay(100, 3, 2);
+		replay.replay(events);
+
+		assertEquals(0, replay.getMismatches());
+		assertEquals(0, replay.getSkipped());
+		// "select 7" left the EDIT mode of "edit"
+		assertEquals(1, replay.controller.getPrompts());
+		// the new row was added, the selected one deleted
+		assertEquals(100, replay.table.getDefaultModel().getTableData().size());
+		assertSame(replay.table.getRow(2), replay.masterCompound.getBag());
+	}
+
+	@Test
+	public void rowChangesWithinTheCoalescingWindowShowTheSelectedRow() {
+		MasterDetailReplay replay = new MasterDetailReplay(10, 2, 2);
+		replay.controller.setRowChangeCoalescingWindow(60 * 60 * 1000L);
+		StandInControls.StandInCompound onOtherTab = replay.compounds.get(2);
+		int loads = onOtherTab.getLoads();
+		for (int row = 1; row <= 3; row++) {
+			replay.table.click(row);
+			replay.controller.changeRow(row, null, true);
+			// the selected tab shows every row of the burst
+			assertSame(replay.table.getRow(row), replay.masterCompound.getBag());
+		}
+		// the first row change loads all tabs, the others leave the hidden tab to its activation
+		assertEquals(loads + 1, onOtherTab.getLoads());
+		replay.tabStrip.click(replay.tabs.get(1));
+
+		assertSame(replay.table.getRow(3), onOtherTab.getBag());
+		assertEquals(loads + 2, onOtherTab.getLoads());
+	}
+
+	@Test
+	public void registeringATabTwiceLoadsItsCompoundsOnce() {
+		MasterDetailReplay replay = new MasterDetailReplay(10, 2, 2);
+		replay.controller.setLazyTabLoading(true);
+		StandInControls.StandInCompound onOtherTab = replay.compounds.get(2);
+		replay.controller.registerTab(replay.tabs.get(1), Arrays.<ICompound> asList(onOtherTab));
+		int loads = onOtherTab.getLoads();
+		replay.table.click(3);
+		replay.table.selectionChange(3, true);
+		replay.tabStrip.click(replay.tabs.get(1));
+
+		assertEquals(loads + 1, onOtherTab.getLoads());
+	}
+
+	@Test
+	public void emptiedActiveTabKeepsLazyLoading() {
+		MasterDetailReplay replay = new MasterDetailReplay(10, 3, 1);
+		replay.controller.setLazyTabLoading(true);
+		replay.tabStrip.click(replay.tabs.get(1));
+		replay.controller.unregisterCompound(replay.compounds.get(1));
+		StandInControls.StandInCompound onOtherTab = replay.compounds.get(2);
+		int loads = onOtherTab.getLoads();
+		replay.table.click(3);
+		replay.table.selectionChange(3, true);
+
+		assertEquals(loads, onOtherTab.getLoads());
+	}
+
+	@Test
+	public void leavingANewItemByTabChangeKeepsTheSelectedRow() {
+		MasterDetailReplay replay = new MasterDetailReplay(10, 2, 2);
+		replay.controller.setTrackedProperties(replay.masterCompound, "name", "amount");
+		replay.table.click(3);
+		replay.controller.changeRow(3, null, true);
+		StandInControls.Row selected = (StandInControls.Row) replay.table.getRow(3).getObject();
+		replay.apply(MasterDetailReplay.Event.parse("new"));
+		((StandInControls.Row) replay.masterCompound.getBag().getObject()).setName("typed");
+		replay.tabStrip.click(replay.tabs.get(1));
+
+		assertEquals(1, replay.controller.getPrompts());
+		assertEquals("row 3", selected.getName());
+		assertEquals(4.5, selected.getAmount(), 0);
+		assertSame(replay.table.getRow(3), replay.masterCompound.getBag());
+	}
+}
@@ -0,0 +1,56 @@
+package org.webguitoolkit.ui.addons;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class PropertyAccessTest {
+
+	@Test
+	public void readsAndWritesPaths() {
+		Holder holder = new Holder();
+		PropertyAccess.write(holder, "row.name", "changed");
+		PropertyAccess.write(holder, "map(key_1)", "value");
+
+		assertEquals("changed", PropertyAccess.read(holder, "row.name"));
+		assertEquals(Integer.valueOf(3), PropertyAccess.read(holder, "row.id"));
+		assertEquals("value", PropertyAccess.read(holder, "map(key_1)"));
+		assertNull(PropertyAccess.read(new Holder(null), "row.name"));
+	}
+
+	@Test
+	public void pathCacheIsBounded() {
+		Holder holder = new Holder();
+		for (int i = 0; i < 3 * PropertyAccess.MAX_PATHS; i++) {
+			PropertyAccess.write(holder, "map(key_" + i + ")", "value " + i);
+			assertTrue(PropertyAccess.getCachedPaths() <= PropertyAccess.MAX_PATHS);
+		}
+		assertEquals("value 7", PropertyAccess.read(holder, "map(key_7)"));
+	}
+
+	public static class Holder {
+		private final StandInControls.Row row;
+		private final Map<String, Object> map = new HashMap<String, Object>();
+
+		Holder() {
+			this(new StandInControls.Row(3, "row", 1.5));
+		}
+
+		Holder(StandInControls.Row row) {
+			this.row = row;
+		}
+
+		public StandInControls.Row getRow() {
+			return row;
+		}
+
+		public Map<String, Object> getMap() {
+			return map;
+		}
+	}
+}
@@ -0,0 +1,322 @@
+package org.webguitoolkit.ui.addons;
+
+import java.io.Serializable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.webguitoolkit.ui.base.IDataBag;
+import org.webguitoolkit.ui.controls.BaseControl;
+import org.webguitoolkit.ui.controls.form.ButtonBar;
+import org.webguitoolkit.ui.controls.form.Compound;
+import org.webguitoolkit.ui.controls.form.IButtonBarListener;
+import org.webguitoolkit.ui.controls.form.ICompound;
+import org.webguitoolkit.ui.controls.tab.ITab;
+import org.webguitoolkit.ui.controls.tab.ITabListener;
+import org.webguitoolkit.ui.controls.tab.StandardTabStrip;
+import org.webguitoolkit.ui.controls.table.AbstractTableListener;
+import org.webguitoolkit.ui.controls.table.DefaultTableModel;
+import org.webguitoolkit.ui.controls.table.ITableListener;
+import org.webguitoolkit.ui.controls.table.Table;
+
+/**
+ * In-memory stand-ins for the controls a MasterDetailController is wired to. They keep their state in fields and
+ * render nothing, so a controller can be driven and measured without a page.
+ */
+final class StandInControls {
+
+	private StandInControls() {
+	}
+
+	/**
+	 * Master table over a list of bags. selectionChange() with notification calls onRowSelection() of the listener as
+	 * the table does.
+	 */
+	static class StandInTable extends Table {
+		private static final long serialVersionUID = 1L;
+		private final StandInTableModel model = new StandInTableModel();
+		private ITableListener listener;
+		private int selectedRow = -1;
+		private int loads;
+
+		@Override
+		public ITableListener getListener() {
+			return listener;
+		}
+
+		@Override
+		public void setListener(ITableListener listener) {
+			this.listener = listener;
+		}
+
+		@Override
+		public DefaultTableModel getDefaultModel() {
+			return model;
+		}
+
+		@Override
+		public IDataBag getRow(int row) {
+			return model.getTableData().get(row);
+		}
+
+		@Override
+		public int getRowsLoaded() {
+			return model.getTableData().size();
+		}
+
+		@Override
+		public int getSelectedRowIndex() {
+			return selectedRow;
+		}
+
+		@Override
+		public void selectionChange(int row, boolean notify) {
+			selectedRow = row;
+			if (notify && row >= 0)
+				((AbstractTableListener) listener).onRowSelection(this, row);
+		}
+
+		@Override
+		public void load() {
+			loads++;
+		}
+
+		@Override
+		public void removeAndReload(IDataBag bag) {
+			model.getTableData().remove(bag);
+			loads++;
+		}
+
+		/**
+		 * Highlight the row as a click does before the event reaches the listener.
+		 */
+		void click(int row) {
+			selectedRow = row;
+		}
+
+		int getLoads() {
+			return loads;
+		}
+	}
+
+	static class StandInTableModel extends DefaultTableModel {
+		private static final long serialVersionUID = 1L;
+		private List<IDataBag> tableData = new ArrayList<IDataBag>();
+
+		@Override
+		public List<IDataBag> getTableData() {
+			return tableData;
+		}
+
+		@Override
+		public void setTableData(List<IDataBag> tableData) {
+			this.tableData = tableData;
+		}
+	}
+
+	static class StandInTabStrip extends StandardTabStrip {
+		private static final long serialVersionUID = 1L;
+		private ITabListener listener;
+		private ITab selectedTab;
+
+		@Override
+		public ITabListener getListener() {
+			return listener;
+		}
+
+		@Override
+		public void setListener(ITabListener listener) {
+			this.listener = listener;
+		}
+
+		@Override
+		public void selectTab(ITab tab) {
+			selectedTab = tab;
+		}
+
+		/**
+		 * Select the tab as a click on it does.
+		 *
+		 * @return <code>false</code> if the listener kept the old tab
+		 */
+		boolean click(ITab tab) {
+			if (!listener.onTabChange(selectedTab, tab, null))
+				return false;
+			selectedTab = tab;
+			return true;
+		}
+
+		ITab getSelectedTab() {
+			return selectedTab;
+		}
+	}
+
+	static class StandInButtonBar extends ButtonBar {
+		private static final long serialVersionUID = 1L;
+		private final ICompound compound;
+		private IButtonBarListener listener;
+
+		StandInButtonBar(ICompound compound) {
+			this.compound = compound;
+		}
+
+		@Override
+		public ICompound surroundingCompound() {
+			return compound;
+		}
+
+		@Override
+		public IButtonBarListener getListener() {
+			return listener;
+		}
+
+		@Override
+		public void setListener(IButtonBarListener listener) {
+			this.listener = listener;
+		}
+	}
+
+	/**
+	 * Compound reading the properties of its row on load as rendering does.
+	 */
+	static class StandInCompound extends Compound {
+		private static final long serialVersionUID = 1L;
+		private final String id;
+		private IDataBag bag;
+		private int mode = MODE_READONLY;
+		private int loads;
+		private int rendered;
+
+		StandInCompound(String id) {
+			this.id = id;
+		}
+
+		@Override
+		public String getId() {
+			return id;
+		}
+
+		@Override
+		public BaseControl getParent() {
+			return null;
+		}
+
+		@Override
+		public void setBag(IDataBag bag) {
+			this.bag = bag;
+		}
+
+		@Override
+		public IDataBag getBag() {
+			return bag;
+		}
+
+		@Override
+		public void load() {
+			loads++;
+			Object object = (bag != null) ? bag.getObject() : null;
+			if (object instanceof Row)
+				rendered += ((Row) object).getName().length() + String.valueOf(((Row) object).getAmount()).length();
+		}
+
+		@Override
+		public void save() {
+		}
+
+		@Override
+		public int getMode() {
+			return mode;
+		}
+
+		@Override
+		public void changeElementMode(int mode) {
+			this.mode = mode;
+		}
+
+		@Override
+		public boolean hasErrors() {
+			return false;
+		}
+
+		int getLoads() {
+			return loads;
+		}
+	}
+
+	/**
+	 * @return a tab of the tab strip, only getTabStrip() answers more than a default value
+	 */
+	static ITab newTab(StandInTabStrip tabStrip, String name) {
+		return (ITab) Proxy.newProxyInstance(ITab.class.getClassLoader(), new Class<?>[] { ITab.class },
+				new TabHandler(tabStrip, name));
+	}
+
+	private static class TabHandler implements InvocationHandler, Serializable {
+		private static final long serialVersionUID = 1L;
+		private final StandInTabStrip tabStrip;
+		private final String name;
+
+		TabHandler(StandInTabStrip tabStrip, String name) {
+			this.tabStrip = tabStrip;
+			this.name = name;
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) {
+			String methodName = method.getName();
+			if (methodName.equals("getTabStrip"))
+				return tabStrip;
+			if (methodName.equals("getId") || methodName.equals("toString"))
+				return name;
+			if (methodName.equals("equals"))
+				return proxy == args[0];
+			if (methodName.equals("hashCode"))
+				return System.identityHashCode(proxy);
+			Class<?> type = method.getReturnType();
+			if (type == boolean.class)
+				return Boolean.FALSE;
+			if (type == int.class)
+				return 0;
+			if (type == long.class)
+				return 0L;
+			return null;
+		}
+	}
+
+	/**
+	 * Master item of the stand-in table.
+	 */
+	static class Row implements Serializable {
+		private static final long serialVersionUID = 1L;
+		private final int id;
+		private String name;
+		private double amount;
+
+		Row(int id, String name, double amount) {
+			this.id = id;
+			this.name = name;
+			this.amount = amount;
+		}
+
+		public int getId() {
+			return id;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public void setName(String name) {
+			this.name = name;
+		}
+
+		public double getAmount() {
+			return amount;
+		}
+
+		public void setAmount(double amount) {
+			this.amount = amount;
+		}
+	}
+}
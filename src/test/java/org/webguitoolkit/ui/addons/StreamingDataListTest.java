@@ -0,0 +1,128 @@
+package org.webguitoolkit.ui.addons;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Iterator;
+
+import org.junit.Test;
+
+public class StreamingDataListTest {
+
+	private static final int ROWS = 200000;
+	private static final int CHUNK_SIZE = 50;
+
+	@Test
+	public void onlyAChunkAheadIsRead() {
+		Source source = new Source(ROWS);
+		StreamingDataList list = new StreamingDataList(source, CHUNK_SIZE);
+		list.get(0);
+		list.get(CHUNK_SIZE - 1);
+
+		assertEquals(2 * CHUNK_SIZE, source.getRead());
+		assertEquals(2 * CHUNK_SIZE + 1, list.size());
+		assertFalse(list.isComplete());
+	}
+
+	@Test
+	public void sourceIsClosedAtItsEnd() {
+		Source source = new Source(CHUNK_SIZE + 1);
+		StreamingDataList list = new StreamingDataList(source, CHUNK_SIZE);
+		assertFalse(source.isClosed());
+		list.get(0);
+
+		assertTrue(source.isClosed());
+		assertTrue(list.isComplete());
+	}
+
+	@Test
+	public void closeReleasesTheSource() throws Exception {
+		Source source = new Source(ROWS);
+		StreamingDataList list = new StreamingDataList(source, CHUNK_SIZE);
+		list.close();
+
+		assertTrue(source.isClosed());
+		assertTrue(list.isTruncated());
+		assertEquals(CHUNK_SIZE, list.size());
+	}
+
+	@Test
+	public void listSerializedBeforeTheEndIsTruncated() throws Exception {
+		Source source = new Source(ROWS);
+		StreamingDataList list = new StreamingDataList(source, CHUNK_SIZE);
+		list.get(0);
+		StreamingDataList restored = copy(list);
+
+		assertTrue(source.isClosed());
+
+		assertFalse(restored.isComplete());
+		assertTrue(restored.isTruncated());
+		assertEquals(CHUNK_SIZE * 2, restored.size());
+		assertEquals(Integer.valueOf(CHUNK_SIZE), restored.get(CHUNK_SIZE).getObject());
+		restored.readAll();
+		assertEquals(CHUNK_SIZE * 2, restored.size());
+	}
+
+	@Test
+	public void completeListStaysComplete() throws Exception {
+		StreamingDataList list = new StreamingDataList(new Source(CHUNK_SIZE / 2), CHUNK_SIZE);
+		StreamingDataList restored = copy(list);
+
+		assertTrue(restored.isComplete());
+		assertFalse(restored.isTruncated());
+		assertEquals(CHUNK_SIZE / 2, restored.size());
+		assertSame(restored.get(0), restored.get(0));
+	}
+
+	private static StreamingDataList copy(StreamingDataList list) throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(list);
+		out.close();
+		return (StreamingDataList) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+	}
+
+	/**
+	 * Source counting the rows read, as a cursor over a result that must be closed.
+	 */
+	private static class Source implements Iterator<Object>, Closeable {
+		private final int size;
+		private int read;
+		private boolean closed;
+
+		Source(int size) {
+			this.size = size;
+		}
+
+		public boolean hasNext() {
+			return read < size;
+		}
+
+		public Object next() {
+			return Integer.valueOf(read++);
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		public void close() {
+			closed = true;
+		}
+
+		int getRead() {
+			return read;
+		}
+
+		boolean isClosed() {
+			return closed;
+		}
+	}
+}
@@ -0,0 +1,86 @@
+package org.webguitoolkit.ui.addons;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.webguitoolkit.ui.base.DataBag;
+import org.webguitoolkit.ui.base.IDataBag;
+
+public class TableIndexTest {
+
+	private static final String[] PROPERTIES = { "id", "name", "amount" };
+
+	@Test
+	public void sortsEachColumnTypeInOrder() {
+		ColumnSnapshot snapshot = new ColumnSnapshot(newRows(500), PROPERTIES);
+		for (String property : PROPERTIES) {
+			assertSorted(snapshot.sort(property, true), property, 1);
+			assertSorted(snapshot.sort(property, false), property, -1);
+		}
+	}
+
+	@Test
+	public void filtersNumericColumnsByTheirText() {
+		List<StandInControls.Row> rows = newRows(500);
+		ColumnSnapshot snapshot = new ColumnSnapshot(rows, PROPERTIES);
+		int expected = 0;
+		for (StandInControls.Row row : rows) {
+			if (String.valueOf(row.getAmount()).startsWith("1"))
+				expected++;
+		}
+		List<IDataBag> filtered = snapshot.filter("amount", "1", false);
+
+		assertEquals(expected, filtered.size());
+		assertEquals(1, snapshot.filter("id", "42", true).size());
+	}
+
+	@Test
+	public void viewsPassChangesToTheRows() {
+		List<IDataBag> rows = new ArrayList<IDataBag>();
+		for (StandInControls.Row row : newRows(20)) {
+			rows.add(new DataBag(row));
+		}
+		TableIndex index = new TableIndex(rows, PROPERTIES);
+		List<IDataBag> view = index.sort("name", true);
+		IDataBag first = view.get(0);
+
+		// move the first row to the end as the controller does after a save
+		for (int i = 0; i < view.size() - 1; i++) {
+			view.set(i, view.get(i + 1));
+		}
+		view.set(view.size() - 1, first);
+		assertSame(first, view.get(view.size() - 1));
+		assertEquals(20, rows.size());
+
+		view.remove(0);
+		assertEquals(19, rows.size());
+		view.add(0, first);
+		assertEquals(20, rows.size());
+		assertSorted(index.sort("name", true), "name", 1);
+	}
+
+	private static void assertSorted(List<IDataBag> rows, String property, int direction) {
+		for (int i = 1; i < rows.size(); i++) {
+			Object previous = PropertyAccess.read(rows.get(i - 1).getObject(), property);
+			Object current = PropertyAccess.read(rows.get(i).getObject(), property);
+			assertTrue(property + " at " + i, direction * TableIndex.compareValues(previous, current) <= 0);
+		}
+	}
+
+	private static List<StandInControls.Row> newRows(int count) {
+		Random random = new Random(7);
+		List<StandInControls.Row> rows = new ArrayList<StandInControls.Row>();
+		for (int i = 0; i < count; i++) {
+			String name = (random.nextInt(10) == 0) ? null : "Row " + random.nextInt(count / 4 + 1);
+			rows.add(new StandInControls.Row(i, name, random.nextInt(2000) / 10.0));
+		}
+		return Arrays.asList(rows.toArray(new StandInControls.Row[count]));
+	}
+}